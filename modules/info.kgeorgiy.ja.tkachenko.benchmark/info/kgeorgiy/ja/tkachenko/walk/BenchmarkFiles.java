@@ -0,0 +1,64 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// Synthetic inputs for the Walk benchmarks
+final class BenchmarkFiles {
+    private static final int CHUNK = 1 << 20;
+
+    private BenchmarkFiles() {
+    }
+
+    // "0", "4k", "64m", "4g"
+    static long parseSize(final String size) {
+        final char unit = Character.toLowerCase(size.charAt(size.length() - 1));
+        final int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+        final String digits = shift == 0 ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
+
+    static Path createFile(final Path file, final long size, final Random random) throws IOException {
+        final byte[] chunk = new byte[CHUNK];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += CHUNK) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(CHUNK, size - written));
+            }
+        }
+        return file;
+    }
+
+    // writes `count` files of `size` bytes and a manifest listing them
+    static Path createManifest(final Path directory, final int count, final long size, final Random random)
+            throws IOException {
+        final Path manifest = directory.resolve("manifest.txt");
+        try (var writer = Files.newBufferedWriter(manifest)) {
+            for (int i = 0; i < count; i++) {
+                final Path file = createFile(directory.resolve("file" + i), size, random);
+                writer.write(file.toString());
+                writer.newLine();
+            }
+        }
+        return manifest;
+    }
+
+    static void delete(final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of FileHasher, the production read path, for every algorithm and read strategy
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashBenchmark {
+    @Param({"0", "4k", "1m", "64m", "1g", "4g"})
+    public String size;
+
+    @Param({"pjw", "crc32c", "sha-256", "xxhash64", "pjw-lanes"})
+    public String algorithm;
+
+    @Param({"stream", "mmap", "async"})
+    public String read;
+
+    private Path directory;
+    private Path file;
+    private FileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, WalkException {
+        directory = Files.createTempDirectory("walk-hash");
+        file = BenchmarkFiles.createFile(directory.resolve("data"), BenchmarkFiles.parseSize(size), new Random(239));
+        final long threshold = read.equals("mmap") ? 0 : Long.MAX_VALUE;
+        hasher = new FileHasher(HashAlgorithm.forName(algorithm), threshold, read.equals("async"), null,
+                new WalkMetrics(), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] hash() throws IOException {
+        return hasher.hash(file);
+    }
+}
@@ -0,0 +1,92 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Buffer size and stream type sweep of the read loop feeding the PJW hash
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadLoopBenchmark {
+    @Param({"64m"})
+    public String size;
+
+    @Param({"512", "2048", "8192", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"input", "buffered", "channel", "direct"})
+    public String source;
+
+    private Path directory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("walk-read");
+        file = BenchmarkFiles.createFile(directory.resolve("data"), BenchmarkFiles.parseSize(size), new Random(239));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] read() throws IOException {
+        final HashFunction function = HashAlgorithm.PJW.create();
+        switch (source) {
+            case "input":
+                try (InputStream in = Files.newInputStream(file)) {
+                    readStream(in, function);
+                }
+                break;
+            case "buffered":
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file), bufferSize)) {
+                    readStream(in, function);
+                }
+                break;
+            case "channel":
+                readChannel(ByteBuffer.allocate(bufferSize), function);
+                break;
+            case "direct":
+                readChannel(ByteBuffer.allocateDirect(bufferSize), function);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown source " + source);
+        }
+        return function.digest();
+    }
+
+    private void readStream(final InputStream in, final HashFunction function) throws IOException {
+        final byte[] bytes = new byte[bufferSize];
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int length;
+        while ((length = in.read(bytes)) != -1) {
+            buffer.limit(length).position(0);
+            function.update(buffer);
+        }
+    }
+
+    private void readChannel(final ByteBuffer buffer, final HashFunction function) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                function.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+}
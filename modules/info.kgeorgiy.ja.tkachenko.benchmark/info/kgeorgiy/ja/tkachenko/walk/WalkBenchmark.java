@@ -0,0 +1,55 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end Walk runs over generated manifests: many small files or a few huge ones
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WalkBenchmark {
+    @Param({"small", "huge"})
+    public String shape;
+
+    @Param({"1", "8"})
+    public String threads;
+
+    @Param({"pjw"})
+    public String algorithm;
+
+    private Path directory;
+    private Path manifest;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("walk-e2e");
+        final Random random = new Random(239);
+        if (shape.equals("small")) {
+            manifest = BenchmarkFiles.createManifest(directory, 100_000, 1 << 10, random);
+        } else {
+            manifest = BenchmarkFiles.createManifest(directory, 4, 1L << 30, random);
+        }
+        output = directory.resolve("output.txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    // a failed run must fail the trial, not be measured as a fast one
+    @Benchmark
+    public void walk() throws WalkException {
+        Walk.execute(new String[]{"-threads", threads, "-hash", algorithm, manifest.toString(), output.toString()},
+                new WalkOptions());
+    }
+}
@@ -0,0 +1,31 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the Walk benchmarks and stores results as JSON (walk-benchmarks.json unless -rff is given),
+// all other arguments are the usual JMH command line options
+public class WalkBenchmarks {
+    public static void main(String[] args) throws RunnerException {
+        try {
+            CommandLineOptions command = new CommandLineOptions(args);
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(command);
+            if (command.getIncludes().isEmpty()) {
+                options.include(WalkBenchmarks.class.getPackageName() + ".*Benchmark");
+            }
+            if (command.getResultFormat().hasValue() || command.getResult().hasValue()) {
+                options.resultFormat(command.getResultFormat().orElse(ResultFormatType.JSON));
+            } else {
+                options.resultFormat(ResultFormatType.JSON).result("walk-benchmarks.json");
+            }
+            new Runner(options.build()).run();
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// LanesHash kernel on the Vector API: a block of LANES bytes is loaded once and widened into
+// LANES / SPECIES.length() long vectors, each of them is one slice of the lanes.
+// Needs --add-modules jdk.incubator.vector both to compile and to run, LanesHash falls back to its scalar kernel
+class VectorLanesKernel implements LanesHash.Kernel {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_256;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final int PARTS = LanesHash.LANES / LONGS.length();
+
+    VectorLanesKernel() {
+        if (BYTES.length() != LanesHash.LANES || LONGS.length() < 2) {
+            throw new UnsupportedOperationException("No useful vector shape on this platform");
+        }
+    }
+
+    @Override
+    public void update(final long[] lanes, final ByteBuffer buffer, final int from, final int to) {
+        final LongVector[] state = new LongVector[PARTS];
+        for (int part = 0; part < PARTS; part++) {
+            state[part] = LongVector.fromArray(LONGS, lanes, part * LONGS.length());
+        }
+        for (int i = from; i < to; i += LanesHash.LANES) {
+            final ByteVector block = ByteVector.fromByteBuffer(BYTES, buffer, i, ByteOrder.LITTLE_ENDIAN);
+            for (int part = 0; part < PARTS; part++) {
+                final LongVector bytes = ((LongVector) block.convertShape(VectorOperators.B2L, LONGS, part)).and(0xFF);
+                final LongVector hash = state[part].lanewise(VectorOperators.LSHL, 8).add(bytes);
+                final LongVector high = hash.and(LanesHash.HIGH);
+                state[part] = hash.lanewise(VectorOperators.XOR, high.lanewise(VectorOperators.LSHR, 48))
+                        .and(~LanesHash.HIGH);
+            }
+        }
+        for (int part = 0; part < PARTS; part++) {
+            state[part].intoArray(lanes, part * LONGS.length());
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package info.kgeorgiy.ja.tkachenko.arrayset;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+// Immutable sorted map on two parallel arrays sorted by key. Sub-maps and the descending map are views
+// of the same arrays: an index range [from, to) and a direction, nothing is copied.
+public class ArrayMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    private final Object[] keys;
+    private final Object[] values;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+    // the order of the arrays, the view order is reversed if descending
+    private final Comparator<? super K> comparator;
+
+    public ArrayMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    public ArrayMap(final Comparator<? super K> comparator) {
+        this(new Object[0], new Object[0], 0, 0, false, comparator);
+    }
+
+    public ArrayMap(final Map<? extends K, ? extends V> map) {
+        this(map, null);
+    }
+
+    // keys equal by the comparator are merged like in TreeMap: the first key stays, the last value wins
+    @SuppressWarnings("unchecked")
+    public ArrayMap(final Map<? extends K, ? extends V> map, final Comparator<? super K> comparator) {
+        final Map.Entry<K, V>[] entries = (Map.Entry<K, V>[]) map.entrySet().toArray(new Map.Entry<?, ?>[0]);
+        final Comparator<K> order = comparator != null
+                ? (Comparator<K>) comparator
+                : (a, b) -> ((Comparable<? super K>) a).compareTo(b);
+        Arrays.sort(entries, Map.Entry.comparingByKey(order));
+        int size = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (size > 0 && order.compare(entries[size - 1].getKey(), entries[i].getKey()) == 0) {
+                entries[size - 1] = new SimpleImmutableEntry<>(entries[size - 1].getKey(), entries[i].getValue());
+            } else {
+                entries[size++] = entries[i];
+            }
+        }
+        this.keys = new Object[size];
+        this.values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = entries[i].getKey();
+            values[i] = entries[i].getValue();
+        }
+        this.from = 0;
+        this.to = size;
+        this.descending = false;
+        this.comparator = comparator;
+    }
+
+    public ArrayMap(final SortedMap<K, ? extends V> sortedMap) {
+        this.keys = new Object[sortedMap.size()];
+        this.values = new Object[sortedMap.size()];
+        int i = 0;
+        for (final Map.Entry<K, ? extends V> entry : sortedMap.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+        this.from = 0;
+        this.to = keys.length;
+        this.descending = false;
+        this.comparator = sortedMap.comparator();
+    }
+
+    private ArrayMap(final Object[] keys, final Object[] values, final int from, final int to,
+                     final boolean descending, final Comparator<? super K> comparator) {
+        this.keys = keys;
+        this.values = values;
+        this.from = from;
+        this.to = Math.max(from, to);
+        this.descending = descending;
+        this.comparator = comparator;
+    }
+
+    private ArrayMap<K, V> view(final int from, final int to, final boolean descending) {
+        return new ArrayMap<>(keys, values, from, to, descending, comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(final int index) {
+        return (K) keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(final int index) {
+        return (V) values[index];
+    }
+
+    // array index of the given position in the view order
+    private int index(final int position) {
+        return descending ? to - 1 - position : from + position;
+    }
+
+    private boolean inRange(final int index) {
+        return from <= index && index < to;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int search(final Object key) {
+        return Arrays.binarySearch(keys, from, to, key, (Comparator<Object>) comparator);
+    }
+
+    // the greatest array index with a key less than (or equal to) the given one, from - 1 if none
+    private int below(final Object key, final boolean inclusive) {
+        final int index = search(key);
+        return index >= 0 ? (inclusive ? index : index - 1) : -index - 2;
+    }
+
+    // the least array index with a key greater than (or equal to) the given one, to if none
+    private int above(final Object key, final boolean inclusive) {
+        final int index = search(key);
+        return index >= 0 ? (inclusive ? index : index + 1) : -index - 1;
+    }
+
+    private Map.Entry<K, V> entry(final int index) {
+        return inRange(index) ? new SimpleImmutableEntry<>(key(index), value(index)) : null;
+    }
+
+    private K keyOrNull(final int index) {
+        return inRange(index) ? key(index) : null;
+    }
+
+    private K keyOrThrow(final int index) {
+        if (!inRange(index)) {
+            throw new NoSuchElementException("ArrayMap is empty");
+        }
+        return key(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final K a, final K b) {
+        final int result = comparator != null
+                ? comparator.compare(a, b)
+                : ((Comparable<? super K>) a).compareTo(b);
+        return descending ? -result : result;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return descending ? Collections.reverseOrder(comparator) : comparator;
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return search(key) >= 0;
+    }
+
+    @Override
+    public V get(final Object key) {
+        final int index = search(key);
+        return index >= 0 ? value(index) : null;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(final K key) {
+        return entry(descending ? above(key, false) : below(key, false));
+    }
+
+    @Override
+    public K lowerKey(final K key) {
+        return keyOrNull(descending ? above(key, false) : below(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(final K key) {
+        return entry(descending ? above(key, true) : below(key, true));
+    }
+
+    @Override
+    public K floorKey(final K key) {
+        return keyOrNull(descending ? above(key, true) : below(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(final K key) {
+        return entry(descending ? below(key, true) : above(key, true));
+    }
+
+    @Override
+    public K ceilingKey(final K key) {
+        return keyOrNull(descending ? below(key, true) : above(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(final K key) {
+        return entry(descending ? below(key, false) : above(key, false));
+    }
+
+    @Override
+    public K higherKey(final K key) {
+        return keyOrNull(descending ? below(key, false) : above(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return entry(index(0));
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return entry(index(size() - 1));
+    }
+
+    @Override
+    public K firstKey() {
+        return keyOrThrow(index(0));
+    }
+
+    @Override
+    public K lastKey() {
+        return keyOrThrow(index(size() - 1));
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        throw new UnsupportedOperationException("ArrayMap is immutable");
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        throw new UnsupportedOperationException("ArrayMap is immutable");
+    }
+
+    @Override
+    public ArrayMap<K, V> descendingMap() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet<>(this);
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public ArrayMap<K, V> subMap(final K fromKey, final boolean fromInclusive,
+                                 final K toKey, final boolean toInclusive) {
+        if (compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("Left bound is greater than right bound");
+        }
+        return descending
+                ? view(above(toKey, toInclusive), below(fromKey, fromInclusive) + 1, true)
+                : view(above(fromKey, fromInclusive), below(toKey, toInclusive) + 1, false);
+    }
+
+    @Override
+    public ArrayMap<K, V> headMap(final K toKey, final boolean inclusive) {
+        return descending
+                ? view(above(toKey, inclusive), to, true)
+                : view(from, below(toKey, inclusive) + 1, false);
+    }
+
+    @Override
+    public ArrayMap<K, V> tailMap(final K fromKey, final boolean inclusive) {
+        return descending
+                ? view(from, below(fromKey, inclusive) + 1, true)
+                : view(above(fromKey, inclusive), to, false);
+    }
+
+    @Override
+    public ArrayMap<K, V> subMap(final K fromKey, final K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public ArrayMap<K, V> headMap(final K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public ArrayMap<K, V> tailMap(final K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    private <E> Iterator<E> iterator(final IntFunction<E> element) {
+        return new Iterator<>() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < size();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return element.apply(index(position++));
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractList<>() {
+            @Override
+            public V get(final int position) {
+                Objects.checkIndex(position, size());
+                return value(index(position));
+            }
+
+            @Override
+            public int size() {
+                return ArrayMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return ArrayMap.this.iterator(ArrayMap.this::entry);
+            }
+
+            @Override
+            public int size() {
+                return ArrayMap.this.size();
+            }
+
+            @Override
+            public boolean contains(final Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                final int index = search(entry.getKey());
+                return index >= 0 && Objects.equals(values[index], entry.getValue());
+            }
+        };
+    }
+
+    // keys of a map, every navigation is answered by the map
+    private static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+        private final ArrayMap<K, ?> map;
+
+        KeySet(final ArrayMap<K, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return map.iterator(map::key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public K lower(final K k) {
+            return map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(final K k) {
+            return map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(final K k) {
+            return map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(final K k) {
+            return map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            throw new UnsupportedOperationException("ArrayMap is immutable");
+        }
+
+        @Override
+        public K pollLast() {
+            throw new UnsupportedOperationException("ArrayMap is immutable");
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet<>(map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(final K fromElement, final boolean fromInclusive,
+                                      final K toElement, final boolean toInclusive) {
+            return new KeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(final K toElement, final boolean inclusive) {
+            return new KeySet<>(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(final K fromElement, final boolean inclusive) {
+            return new KeySet<>(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(final K fromElement, final K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(final K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(final K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
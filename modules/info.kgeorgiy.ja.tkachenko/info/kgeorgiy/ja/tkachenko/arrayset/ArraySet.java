@@ -2,18 +2,26 @@ package info.kgeorgiy.ja.tkachenko.arrayset;
 
 import java.util.*;
 
-public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
-    private final List<T> data;
+// Subsets and the descending set are views of the same sorted array: an index range [from, to) and a direction
+public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private final Object[] data;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+    // the order of the array, the view order is reversed if descending
     private final Comparator<? super T> comparator;
 
     public ArraySet() {
-        this(List.of(), null);
+        this(new Object[0], null);
     }
 
     public ArraySet(final Collection<? extends T> data, final Comparator<? super T> comparator) {
         final TreeSet<T> treeSet = new TreeSet<>(comparator);
         treeSet.addAll(data);
-        this.data = List.copyOf(treeSet);
+        this.data = treeSet.toArray();
+        this.from = 0;
+        this.to = this.data.length;
+        this.descending = false;
         this.comparator = comparator;
     }
 
@@ -22,79 +30,158 @@ public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
     }
 
     public ArraySet(final Comparator<? super T> comparator) {
-        this(List.of(), comparator);
+        this(new Object[0], comparator);
     }
 
     public ArraySet(final SortedSet<T> sortedSet) {
-        this.data = List.copyOf(sortedSet);
-        this.comparator = sortedSet.comparator();
+        this(sortedSet.toArray(), sortedSet.comparator());
     }
 
-    private ArraySet(final List<T> data, final Comparator<? super T> comparator) {
+    private ArraySet(final Object[] data, final Comparator<? super T> comparator) {
+        this(data, 0, data.length, false, comparator);
+    }
+
+    private ArraySet(final Object[] data, final int from, final int to, final boolean descending,
+                     final Comparator<? super T> comparator) {
         this.data = data;
+        this.from = from;
+        this.to = Math.max(from, to);
+        this.descending = descending;
         this.comparator = comparator;
     }
 
-    @Override
-    public Comparator<? super T> comparator() {
-        return comparator;
+    private ArraySet<T> view(final int from, final int to, final boolean descending) {
+        return new ArraySet<>(data, from, to, descending, comparator);
     }
 
     @Override
-    public SortedSet<T> subSet(final T t, final T e1) {
-        if (compare(t, e1) > 0) {
-            throw new IllegalArgumentException("Left bound is greater than right bound");
-        }
-        return subSetImpl(t, e1, false);
+    public Comparator<? super T> comparator() {
+        return descending ? Collections.reverseOrder(comparator) : comparator;
     }
 
     @SuppressWarnings("unchecked")
     private int compare(final T t, final T e1) {
+        final int result;
         if (comparator != null) {
-            return comparator.compare(t, e1);
+            result = comparator.compare(t, e1);
         } else {
-            return ((Comparable<? super T>) t).compareTo(e1);
+            result = ((Comparable<? super T>) t).compareTo(e1);
         }
+        return descending ? -result : result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(final int index) {
+        return (T) data[index];
+    }
+
+    // array index of the given position in the view order
+    private int index(final int position) {
+        return descending ? to - 1 - position : from + position;
+    }
+
+    private T getOrNull(final int index) {
+        return from <= index && index < to ? get(index) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int search(final Object t) {
+        return Arrays.binarySearch(data, from, to, t, (Comparator<Object>) comparator);
+    }
+
+    // the greatest array index with an element less than (or equal to) the given one, from - 1 if none
+    private int below(final T t, final boolean inclusive) {
+        final int index = search(t);
+        return index >= 0 ? (inclusive ? index : index - 1) : -index - 2;
+    }
+
+    // the least array index with an element greater than (or equal to) the given one, to if none
+    private int above(final T t, final boolean inclusive) {
+        final int index = search(t);
+        return index >= 0 ? (inclusive ? index : index + 1) : -index - 1;
     }
 
     @Override
-    public SortedSet<T> headSet(final T t) {
-        if (data.isEmpty()) {
-            return new ArraySet<>(comparator);
+    public T lower(final T t) {
+        return getOrNull(descending ? above(t, false) : below(t, false));
+    }
+
+    @Override
+    public T floor(final T t) {
+        return getOrNull(descending ? above(t, true) : below(t, true));
+    }
+
+    @Override
+    public T ceiling(final T t) {
+        return getOrNull(descending ? below(t, true) : above(t, true));
+    }
+
+    @Override
+    public T higher(final T t) {
+        return getOrNull(descending ? below(t, false) : above(t, false));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public NavigableSet<T> subSet(final T t, final boolean fromInclusive, final T e1, final boolean toInclusive) {
+        if (compare(t, e1) > 0) {
+            throw new IllegalArgumentException("Left bound is greater than right bound");
         }
-        return subSetImpl(first(), t, false);
+        return descending
+                ? view(above(e1, toInclusive), below(t, fromInclusive) + 1, true)
+                : view(above(t, fromInclusive), below(e1, toInclusive) + 1, false);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(final T t, final boolean inclusive) {
+        return descending
+                ? view(above(t, inclusive), to, true)
+                : view(from, below(t, inclusive) + 1, false);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(final T t, final boolean inclusive) {
+        return descending
+                ? view(from, below(t, inclusive) + 1, true)
+                : view(above(t, inclusive), to, false);
+    }
+
+    @Override
+    public SortedSet<T> subSet(final T t, final T e1) {
+        return subSet(t, true, e1, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(final T t) {
+        return headSet(t, false);
     }
 
     @Override
     public SortedSet<T> tailSet(final T t) {
-        if (data.isEmpty()) {
-            return new ArraySet<>(comparator);
-        }
-        return subSetImpl(t, last(), true);
+        return tailSet(t, true);
     }
 
-    private SortedSet<T> subSetImpl(final T t, final T e1, final boolean inclusive) {
-        final int left = getIndex(t);
-        int right = getIndex(e1);
-        if (inclusive) {
-            right++;
-        }
-        if (left >= right) {
-            return new ArraySet<>(comparator);
-        }
-        return new ArraySet<>(data.subList(left, right), comparator);
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return view(from, to, !descending);
     }
 
-    private int getIndex(final T t) {
-        int res = Collections.binarySearch(data, t, comparator);
-        if (res < 0) {
-            res = -res - 1;
-        }
-        return res;
+    @Override
+    public Iterator<T> descendingIterator() {
+        return descendingSet().iterator();
     }
 
     private void checkEmpty() {
-        if (data.isEmpty()) {
+        if (isEmpty()) {
             throw new NoSuchElementException("ArraySet is empty");
         }
     }
@@ -102,34 +189,47 @@ public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
     @Override
     public T first() {
         checkEmpty();
-        return data.get(0);
+        return get(index(0));
     }
 
     @Override
     public T last() {
         checkEmpty();
-        return data.get(size() - 1);
+        return get(index(size() - 1));
     }
 
     @Override
     public int size() {
-        return data.size();
+        return to - from;
     }
 
     @Override
     public boolean isEmpty() {
-        return data.isEmpty();
+        return from == to;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean contains(final Object o) {
-        final T t = (T) o;
-        return Collections.binarySearch(data, t, comparator) >= 0;
+        return search(o) >= 0;
     }
 
     @Override
     public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+        return new Iterator<>() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index(position++));
+            }
+        };
     }
 }
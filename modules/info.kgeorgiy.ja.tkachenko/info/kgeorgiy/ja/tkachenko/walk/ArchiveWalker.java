@@ -0,0 +1,84 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Hashes every file entry of the listed zip/jar archives without extracting them, writing "archive!/entry" lines.
+// ZipFile serves entries concurrently, so entries are inflated and hashed on a pool and written in archive order.
+class ArchiveWalker implements AutoCloseable {
+    private static final String SEPARATOR = "!/";
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private final FileHasher hasher;
+    private final ExecutorService executor;
+    private final int window;
+
+    ArchiveWalker(final int threads, final FileHasher hasher) {
+        this.hasher = hasher;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.window = threads * WINDOW_PER_THREAD;
+    }
+
+    void walk(final LineReader reader, final HashSink writer) throws IOException, WalkException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final ZipFile archive;
+            try {
+                archive = new ZipFile(Paths.get(line).toFile());
+            } catch (InvalidPathException e) {
+                writer.write(hasher.invalidPath(line, e.getMessage()), line);
+                continue;
+            } catch (IOException e) {
+                writer.write(hasher.failed("opening archive", line, e), line);
+                continue;
+            }
+            // entries report their own read errors, anything thrown here comes from the output
+            try (archive) {
+                walk(line, archive, writer);
+            }
+        }
+    }
+
+    private void walk(final String line, final ZipFile archive, final HashSink writer)
+            throws IOException, WalkException {
+        final OrderedWindow pending = new OrderedWindow(executor, window, writer);
+        boolean finished = false;
+        try {
+            for (final Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements(); ) {
+                final ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final String name = line + SEPARATOR + entry.getName();
+                pending.submit(name, () -> hash(archive, entry, name));
+            }
+            pending.finish();
+            finished = true;
+        } finally {
+            // the archive is closed after this call, so no entry may still be reading from it
+            if (!finished) {
+                pending.abandon();
+            }
+        }
+    }
+
+    private byte[] hash(final ZipFile archive, final ZipEntry entry, final String name) {
+        try (InputStream in = archive.getInputStream(entry)) {
+            return hasher.hash(in);
+        } catch (IOException e) {
+            return hasher.failed("reading entry", name, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
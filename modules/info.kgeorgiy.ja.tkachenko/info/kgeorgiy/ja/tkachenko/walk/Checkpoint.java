@@ -0,0 +1,163 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Journal of committed positions of a Walk run, stored next to the output as <output>.checkpoint.
+// Every `interval` output lines the output is flushed and forced to disk, then the number of input lines
+// and output bytes written so far is appended to the journal. A run with the same arguments resumes
+// from the last committed record: the output is truncated to it and the committed input lines are skipped.
+class Checkpoint implements Closeable {
+    private static final String SUFFIX = ".checkpoint";
+    private static final int MAGIC = 0x57414C43;
+    private static final int RECORD = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final long interval;
+    private final Path journalPath;
+    private final FileChannel journal;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+    private FileChannel output;
+    private HashWriter writer;
+    private long lines;
+    private long bytes;
+    private long uncommitted;
+
+    private Checkpoint(final long interval, final Path journalPath, final FileChannel journal) {
+        this.interval = interval;
+        this.journalPath = journalPath;
+        this.journal = journal;
+    }
+
+    static Checkpoint disabled() {
+        return new Checkpoint(0, null, null);
+    }
+
+    // `run` identifies the arguments of the run, a journal of another run is discarded
+    static Checkpoint open(final Path output, final String run, final long interval) throws IOException {
+        final Path journalPath = output.resolveSibling(output.getFileName() + SUFFIX);
+        final FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final Checkpoint checkpoint = new Checkpoint(interval, journalPath, journal);
+        try {
+            checkpoint.load(run, Files.exists(output) ? Files.size(output) : -1);
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return checkpoint;
+    }
+
+    private void load(final String run, final long outputSize) throws IOException {
+        final byte[] header = header(run);
+        final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        long valid = 0;
+        if (data.remaining() >= header.length && data.slice(0, header.length).equals(ByteBuffer.wrap(header))) {
+            valid = header.length;
+            final CRC32C crc = new CRC32C();
+            for (int position = header.length; position + RECORD <= data.limit(); position += RECORD) {
+                crc.reset();
+                crc.update(data.slice(position, Long.BYTES * 2));
+                if (data.getInt(position + Long.BYTES * 2) != (int) crc.getValue()) {
+                    break;
+                }
+                lines = data.getLong(position);
+                bytes = data.getLong(position + Long.BYTES);
+                valid = position + RECORD;
+            }
+        }
+        if (bytes > outputSize) {
+            System.err.println("Output is shorter than checkpoint " + journalPath + ", starting over");
+            valid = 0;
+        }
+        if (valid == 0) {
+            lines = 0;
+            bytes = 0;
+            journal.truncate(0);
+            journal.write(ByteBuffer.wrap(header), 0);
+            journal.force(false);
+        } else {
+            journal.truncate(valid);
+            if (lines > 0) {
+                System.err.println("Resuming from checkpoint: " + lines + " lines already written");
+            }
+        }
+        journal.position(journal.size());
+    }
+
+    private static byte[] header(final String run) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(run);
+        }
+        return header.toByteArray();
+    }
+
+    // opens the output positioned after the last committed byte
+    FileChannel openOutput(final Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(bytes);
+        channel.position(bytes);
+        return channel;
+    }
+
+    void skipCommitted(final LineReader reader) throws IOException {
+        for (long i = 0; i < lines; i++) {
+            if (reader.readLine() == null) {
+                throw new IOException("Input is shorter than checkpoint " + journalPath);
+            }
+        }
+    }
+
+    void attach(final FileChannel output, final HashWriter writer) {
+        this.output = output;
+        this.writer = writer;
+    }
+
+    void lineWritten() throws IOException {
+        if (journal != null) {
+            uncommitted++;
+            if (uncommitted >= interval) {
+                commit();
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        writer.flush();
+        output.force(false);
+        lines += uncommitted;
+        bytes = output.position();
+        uncommitted = 0;
+
+        final CRC32C crc = new CRC32C();
+        record.clear();
+        record.putLong(lines).putLong(bytes);
+        crc.update(record.array(), 0, Long.BYTES * 2);
+        record.putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            journal.write(record);
+        }
+        journal.force(false);
+    }
+
+    // the run finished, nothing to resume
+    void complete() throws IOException {
+        if (journal != null) {
+            journal.close();
+            Files.delete(journalPath);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Writes "<digest> <path>#<offset>+<length>" lines of the chunks of every listed file as they are cut,
+// followed by the digest of the whole file, both computed in one read of the file.
+// If reading fails midway, the chunks already cut stay in the output and the file gets the zero hash
+class ChunkWalker {
+    private static final String SEPARATOR = "#";
+
+    private final FileHasher hasher;
+    private final int average;
+
+    ChunkWalker(final FileHasher hasher, final int average) {
+        this.hasher = hasher;
+        this.average = average;
+    }
+
+    void walk(final LineReader reader, final HashSink writer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            walk(line, writer);
+        }
+    }
+
+    private void walk(final String line, final HashSink writer) throws IOException {
+        final Path path;
+        try {
+            path = Paths.get(line);
+        } catch (InvalidPathException e) {
+            writer.write(hasher.invalidPath(line, e.getMessage()), line);
+            return;
+        }
+        final Chunker chunker = new Chunker(hasher.algorithm(), average,
+                (offset, length, hash) -> write(writer, hash, line + SEPARATOR + offset + "+" + length));
+        final byte[] hash;
+        try {
+            hash = hasher.hash(path, chunker);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IOException e) {
+            writer.write(hasher.failed(line, e), line);
+            return;
+        }
+        writer.write(hash, line);
+    }
+
+    // chunks are cut inside HashFunction.update, which cannot throw IOException
+    private static void write(final HashSink writer, final byte[] hash, final String line) {
+        try {
+            writer.write(hash, line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+// Whole-file hash that also splits the contents at content-defined boundaries, FastCDC style:
+// a gear rolling hash is checked against a stricter mask before the average chunk size and a looser one after it,
+// chunks are at least a quarter and at most eight times the average size. An insertion moves only nearby boundaries,
+// so most chunk digests of a slightly changed file stay the same. Every chunk goes to the sink as soon as it is cut.
+class Chunker implements HashFunction {
+    static final int DEFAULT_AVERAGE = 1 << 13;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        final SplittableRandom random = new SplittableRandom(0x57414C4B43444300L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final HashAlgorithm algorithm;
+    private final HashFunction file;
+    private final int min;
+    private final int average;
+    private final int max;
+    private final long strictMask;
+    private final long looseMask;
+    private final ChunkSink sink;
+    private HashFunction chunk;
+    private long chunkStart;
+    private int chunkLength;
+    private long fingerprint;
+
+    interface ChunkSink {
+        void chunk(long offset, int length, byte[] hash);
+    }
+
+    // `average` must be a power of two
+    Chunker(final HashAlgorithm algorithm, final int average, final ChunkSink sink) {
+        this.algorithm = algorithm;
+        this.sink = sink;
+        this.file = algorithm.create();
+        this.chunk = algorithm.create();
+        this.min = average / 4;
+        this.average = average;
+        this.max = average * 8;
+        final int bits = Integer.numberOfTrailingZeros(average);
+        // the gear hash shifts left, so its high bits depend on the most bytes
+        this.strictMask = -1L << (Long.SIZE - bits - 1);
+        this.looseMask = -1L << (Long.SIZE - bits + 1);
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        file.update(buffer.duplicate());
+        final int limit = buffer.limit();
+        int start = buffer.position();
+        for (int i = start; i < limit; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer.get(i) & 0xFF];
+            chunkLength++;
+            if (chunkLength >= min && (chunkLength >= max
+                    || (fingerprint & (chunkLength < average ? strictMask : looseMask)) == 0)) {
+                chunk.update(buffer.duplicate().limit(i + 1).position(start));
+                cut();
+                start = i + 1;
+            }
+        }
+        chunk.update(buffer.duplicate().position(start));
+        buffer.position(limit);
+    }
+
+    private void cut() {
+        sink.chunk(chunkStart, chunkLength, chunk.digest());
+        chunkStart += chunkLength;
+        chunkLength = 0;
+        fingerprint = 0;
+        chunk = algorithm.create();
+    }
+
+    @Override
+    public byte[] digest() {
+        if (chunkLength > 0) {
+            cut();
+        }
+        return file.digest();
+    }
+}
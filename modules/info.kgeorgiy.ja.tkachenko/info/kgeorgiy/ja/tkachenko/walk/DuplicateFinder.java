@@ -0,0 +1,175 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Finds groups of identical files among the listed paths. Files are grouped by size first,
+// then by a hash of their first and last EDGE bytes, and only files still colliding after that are hashed fully.
+// A full hash may still collide, so every group is confirmed by comparing the contents before it is written.
+// Groups are written in order of their first member in the input, separated by empty lines.
+class DuplicateFinder implements AutoCloseable {
+    private static final int EDGE = 4096;
+
+    private final FileHasher hasher;
+    private final ExecutorService executor;
+
+    private static class Candidate {
+        final int index;
+        final String line;
+        final Path path;
+        byte[] hash;
+
+        Candidate(final int index, final String line, final Path path) {
+            this.index = index;
+            this.line = line;
+            this.path = path;
+        }
+    }
+
+    private interface Hashing {
+        byte[] hash(Path path) throws IOException;
+    }
+
+    DuplicateFinder(final int threads, final FileHasher hasher) {
+        this.hasher = hasher;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    void find(final LineReader reader, final HashWriter writer) throws IOException, WalkException {
+        final Map<Long, List<Candidate>> bySize = new HashMap<>();
+        final Set<Path> seen = new HashSet<>();
+        String line;
+        for (int index = 0; (line = reader.readLine()) != null; index++) {
+            final Path path;
+            final BasicFileAttributes attributes;
+            try {
+                path = Paths.get(line);
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (InvalidPathException e) {
+                hasher.invalidPath(line, e.getMessage());
+                continue;
+            } catch (IOException e) {
+                hasher.failed(line, e);
+                continue;
+            }
+            if (attributes.isRegularFile() && seen.add(path.toAbsolutePath().normalize())) {
+                bySize.computeIfAbsent(attributes.size(), size -> new ArrayList<>())
+                        .add(new Candidate(index, line, path));
+            }
+        }
+
+        final List<List<Candidate>> duplicates = new ArrayList<>();
+        for (final Map.Entry<Long, List<Candidate>> group : bySize.entrySet()) {
+            if (group.getValue().size() < 2) {
+                continue;
+            }
+            if (group.getKey() <= 2 * EDGE) {
+                duplicates.addAll(split(group.getValue(), hasher::hash));
+            } else {
+                for (final List<Candidate> partial : split(group.getValue(), path -> hasher.hashEdges(path, EDGE))) {
+                    duplicates.addAll(split(partial, hasher::hash));
+                }
+            }
+        }
+
+        final List<List<Candidate>> confirmed = confirm(duplicates);
+        confirmed.sort(Comparator.comparingInt(group -> group.get(0).index));
+        boolean first = true;
+        for (final List<Candidate> group : confirmed) {
+            if (!first) {
+                writer.newLine();
+            }
+            first = false;
+            for (final Candidate candidate : group) {
+                writer.write(candidate.hash, candidate.line);
+            }
+        }
+    }
+
+    // hashes every candidate and returns subgroups of at least two candidates with equal hashes
+    private List<List<Candidate>> split(final List<Candidate> group, final Hashing hashing) throws WalkException {
+        final List<Future<byte[]>> hashes = new ArrayList<>(group.size());
+        for (final Candidate candidate : group) {
+            hashes.add(executor.submit(() -> hashing.hash(candidate.path)));
+        }
+        final Map<ByteBuffer, List<Candidate>> byHash = new LinkedHashMap<>();
+        for (int i = 0; i < group.size(); i++) {
+            final Candidate candidate = group.get(i);
+            try {
+                candidate.hash = hashes.get(i).get();
+                byHash.computeIfAbsent(ByteBuffer.wrap(candidate.hash), hash -> new ArrayList<>()).add(candidate);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WalkException("Interrupted while hashing " + candidate.line, e);
+            } catch (ExecutionException e) {
+                hasher.failed(candidate.line, e.getCause());
+            }
+        }
+        final List<List<Candidate>> result = new ArrayList<>();
+        for (final List<Candidate> candidates : byHash.values()) {
+            if (candidates.size() > 1) {
+                result.add(candidates);
+            }
+        }
+        return result;
+    }
+
+    private List<List<Candidate>> confirm(final List<List<Candidate>> groups) throws WalkException {
+        final List<Future<List<List<Candidate>>>> futures = new ArrayList<>(groups.size());
+        for (final List<Candidate> group : groups) {
+            futures.add(executor.submit(() -> compare(group)));
+        }
+        final List<List<Candidate>> result = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            try {
+                result.addAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WalkException("Interrupted while comparing " + groups.get(i).get(0).line, e);
+            } catch (ExecutionException e) {
+                throw new WalkException("Error while comparing " + groups.get(i).get(0).line, e);
+            }
+        }
+        return result;
+    }
+
+    // splits candidates with equal hashes by contents, returns subgroups of at least two identical files
+    private List<List<Candidate>> compare(final List<Candidate> group) {
+        final List<List<Candidate>> identical = new ArrayList<>();
+        for (final Candidate candidate : group) {
+            try {
+                List<Candidate> match = null;
+                for (final List<Candidate> subgroup : identical) {
+                    if (Files.mismatch(subgroup.get(0).path, candidate.path) == -1) {
+                        match = subgroup;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    match = new ArrayList<>();
+                    identical.add(match);
+                }
+                match.add(candidate);
+            } catch (IOException e) {
+                hasher.failed(candidate.line, e);
+            }
+        }
+        identical.removeIf(subgroup -> subgroup.size() < 2);
+        return identical;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,442 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Hashes file contents, files of at least `mmapThreshold` bytes are mapped window by window
+// and hashed straight from the mapped buffer instead of being copied through a heap buffer.
+// Smaller files are read through a per-thread buffer in whole file system blocks, in one read if the file fits.
+// With asynchronous I/O every file is read through AsynchronousFileChannel into two direct buffers,
+// so the next block is in flight while the current one is hashed.
+// Buffers are kept per thread, or in a bounded pool where every file gets a thread of its own.
+// With a cache, files whose metadata did not change since the previous run are not read at all.
+// With a throttle, every read waits for its share of the bandwidth and reports its latency
+class FileHasher {
+    static final long DEFAULT_MMAP_THRESHOLD = 16L << 20;
+    private static final long MAP_WINDOW = 64L << 20;
+    private static final long THROTTLED_MAP_WINDOW = 1L << 20;
+    private static final int DEFAULT_BLOCK = 4096;
+    private static final int MAX_BUFFER = 1 << 18;
+    private static final int MAX_CACHED_DIRECTORIES = 1 << 12;
+    private static final int ASYNC_BLOCK = 1 << 17;
+    private static final String SCANNING = "scanning file";
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final HashAlgorithm algorithm;
+    private final long mmapThreshold;
+    private final boolean asyncIO;
+    private final HashCache cache;
+    private final WalkMetrics metrics;
+    private final Throttle throttle;
+    // Files.getFileStore scans the mount table, so block sizes are remembered per directory and per device
+    private final Map<Path, Integer> blockSizes = new ConcurrentHashMap<>();
+    private final Map<Object, Integer> deviceBlockSizes = new ConcurrentHashMap<>();
+    // null if buffers are kept per thread
+    private final BlockingQueue<Buffers> pool;
+
+    // read buffers of one file being hashed
+    private static class Buffers {
+        private byte[] heap = new byte[DEFAULT_BLOCK];
+        private ByteBuffer[] async;
+
+        byte[] heap(final int size) {
+            if (heap.length < size) {
+                heap = new byte[size];
+            }
+            return heap;
+        }
+
+        ByteBuffer[] async() {
+            if (async == null) {
+                async = new ByteBuffer[]{
+                        ByteBuffer.allocateDirect(ASYNC_BLOCK), ByteBuffer.allocateDirect(ASYNC_BLOCK)
+                };
+            }
+            return async;
+        }
+    }
+
+    FileHasher(final HashAlgorithm algorithm, final long mmapThreshold, final boolean asyncIO,
+               final HashCache cache, final WalkMetrics metrics, final Throttle throttle) {
+        this(algorithm, mmapThreshold, asyncIO, cache, metrics, throttle, null);
+    }
+
+    private FileHasher(final HashAlgorithm algorithm, final long mmapThreshold, final boolean asyncIO,
+                       final HashCache cache, final WalkMetrics metrics, final Throttle throttle,
+                       final BlockingQueue<Buffers> pool) {
+        this.algorithm = algorithm;
+        this.mmapThreshold = mmapThreshold;
+        this.asyncIO = asyncIO;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.throttle = throttle;
+        this.pool = pool;
+    }
+
+    // the same hasher with buffers kept in a pool of at most `size`, for a thread per file:
+    // buffers of short-lived threads would be allocated for every file and freed only by the GC
+    FileHasher withBufferPool(final int size) {
+        return new FileHasher(algorithm, mmapThreshold, asyncIO, cache, metrics, throttle,
+                new ArrayBlockingQueue<>(size));
+    }
+
+    private Buffers takeBuffers() {
+        if (pool == null) {
+            return BUFFERS.get();
+        }
+        final Buffers buffers = pool.poll();
+        return buffers != null ? buffers : new Buffers();
+    }
+
+    private void releaseBuffers(final Buffers buffers) {
+        if (pool != null) {
+            pool.offer(buffers);
+        }
+    }
+
+    HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    // whether hashing a file reads its attributes
+    boolean cached() {
+        return cache != null;
+    }
+
+    byte[] hashLine(final String line) {
+        try {
+            return hashFile(Paths.get(line), line);
+        } catch (InvalidPathException e) {
+            return invalidPath(line, e.getMessage());
+        }
+    }
+
+    // known failures are reported exactly as hashFile would report them, without touching the file
+    byte[] hashStatus(final MetadataPrefetcher.Status status) {
+        if (status.kind == MetadataPrefetcher.Kind.INVALID) {
+            return invalidPath(status.line, status.error);
+        } else if (status.failed()) {
+            return failed(SCANNING, status.line, status.error, status.errorType);
+        } else if (status.path == null) {
+            return hashLine(status.line);
+        } else if (status.kind == MetadataPrefetcher.Kind.REGULAR) {
+            try {
+                return hash(status.path, status.attributes);
+            } catch (IOException e) {
+                return failed(status.line, e);
+            }
+        }
+        return hashFile(status.path, status.line);
+    }
+
+    // reports a line that is not a path, the line gets the zero hash
+    byte[] invalidPath(final String line, final String message) {
+        System.err.println("Invalid path " + line + ": " + message);
+        metrics.invalidPath();
+        return algorithm.zero();
+    }
+
+    byte[] hashFile(final Path path, final String name) {
+        try {
+            return hash(path);
+        } catch (IOException e) {
+            return failed(name, e);
+        }
+    }
+
+    byte[] failed(final String name, final Throwable e) {
+        return failed(SCANNING, name, e);
+    }
+
+    // reports a failure of `action` ("listing directory", ...) on `name`, which gets the zero hash
+    byte[] failed(final String action, final String name, final Throwable e) {
+        return failed(action, name, e.getMessage(), e.getClass().getSimpleName());
+    }
+
+    private byte[] failed(final String action, final String name, final String message, final String type) {
+        System.err.println("Error while " + action + " " + name + ": " + message);
+        metrics.ioError(type);
+        return algorithm.zero();
+    }
+
+    byte[] hash(final Path path) throws IOException {
+        return cache == null ? compute(path) : hash(path, Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    // with attributes already read by the caller
+    private byte[] hash(final Path path, final BasicFileAttributes attributes) throws IOException {
+        if (cache == null) {
+            return compute(path);
+        }
+        final byte[] cached = cache.lookup(path, attributes);
+        if (cached != null) {
+            metrics.cacheHit();
+            return cached;
+        }
+        final byte[] hash = compute(path);
+        cache.store(path, attributes, hash);
+        return hash;
+    }
+
+    byte[] hash(final InputStream inputStream) throws IOException {
+        final long start = System.nanoTime();
+        final HashFunction function = algorithm.create();
+        final Buffers buffers = takeBuffers();
+        final long bytes;
+        try {
+            bytes = hashStream(inputStream, function, buffers, MAX_BUFFER, Long.MAX_VALUE);
+        } finally {
+            releaseBuffers(buffers);
+        }
+        final byte[] digest = function.digest();
+        metrics.fileHashed(bytes, System.nanoTime() - start);
+        return digest;
+    }
+
+    // hash of the first and the last `edge` bytes of the file, the whole file if it is shorter than 2 * edge
+    byte[] hashEdges(final Path path, final int edge) throws IOException {
+        final HashFunction function = algorithm.create();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 2L * edge));
+            readFully(channel, buffer.limit(Math.min(edge, buffer.capacity())), 0);
+            readFully(channel, buffer.limit(buffer.capacity()), size - buffer.remaining());
+            function.update(buffer.flip());
+        }
+        return function.digest();
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("File was truncated while reading");
+            }
+            offset += read;
+        }
+    }
+
+    private byte[] compute(final Path path) throws IOException {
+        return hash(path, algorithm.create());
+    }
+
+    // feeds the contents to the given function, bypassing the cache
+    byte[] hash(final Path path, final HashFunction function) throws IOException {
+        final long start = System.nanoTime();
+        final long bytes;
+        final Buffers buffers = takeBuffers();
+        try {
+            if (asyncIO) {
+                bytes = hashAsync(path, function, buffers);
+            } else {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    final long size = channel.size();
+                    if (size >= mmapThreshold) {
+                        bytes = hashMapped(channel, size, function);
+                    } else {
+                        bytes = hashStream(Channels.newInputStream(channel), function, buffers,
+                                bufferSize(path, size), size);
+                    }
+                }
+            }
+        } finally {
+            releaseBuffers(buffers);
+        }
+        final byte[] digest = function.digest();
+        metrics.fileHashed(bytes, System.nanoTime() - start);
+        return digest;
+    }
+
+    // whole blocks covering the file, at least one block and at most MAX_BUFFER
+    private int bufferSize(final Path path, final long size) {
+        // one read either way, whatever the block size
+        if (size <= DEFAULT_BLOCK || size >= MAX_BUFFER) {
+            return size <= DEFAULT_BLOCK ? DEFAULT_BLOCK : MAX_BUFFER;
+        }
+        final int block = blockSize(path);
+        final long blocks = Math.max(1, (size + block - 1) / block);
+        return (int) Math.min(MAX_BUFFER, blocks * block);
+    }
+
+    private int blockSize(final Path path) {
+        final Path directory = path.toAbsolutePath().getParent();
+        final Integer cached = directory == null ? null : blockSizes.get(directory);
+        if (cached != null) {
+            return cached;
+        }
+        final Object device = device(path);
+        Integer block = device == null ? null : deviceBlockSizes.get(device);
+        if (block == null) {
+            block = fileStoreBlockSize(path);
+            if (device != null) {
+                deviceBlockSizes.put(device, block);
+            }
+        }
+        if (directory != null) {
+            if (blockSizes.size() >= MAX_CACHED_DIRECTORIES) {
+                blockSizes.clear();
+            }
+            blockSizes.put(directory, block);
+        }
+        return block;
+    }
+
+    private static int fileStoreBlockSize(final Path path) {
+        try {
+            return (int) Math.min(MAX_BUFFER, Files.getFileStore(path).getBlockSize());
+        } catch (IOException | UnsupportedOperationException e) {
+            return DEFAULT_BLOCK;
+        }
+    }
+
+    // null where the file system does not expose devices
+    private static Object device(final Path path) {
+        try {
+            return Files.getAttribute(path, "unix:dev");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // `size` is the expected length of the stream, Long.MAX_VALUE if unknown
+    private long hashStream(final InputStream inputStream, final HashFunction function, final Buffers buffers,
+                            final int bufferSize, final long size) throws IOException {
+        final byte[] buff = buffers.heap(bufferSize);
+        final ByteBuffer buffer = ByteBuffer.wrap(buff);
+        long total = 0;
+        int length;
+        while ((length = read(inputStream, buff, bufferSize, size - total)) != -1) {
+            buffer.limit(length).position(0);
+            function.update(buffer);
+            total += length;
+        }
+        return total;
+    }
+
+    private int read(final InputStream inputStream, final byte[] buffer, final int length, final long remaining)
+            throws IOException {
+        if (throttle == null) {
+            return inputStream.read(buffer, 0, length);
+        }
+        final long reserved = reserve(length, remaining);
+        final long start = System.nanoTime();
+        final int read = inputStream.read(buffer, 0, length);
+        throttle.completed(reserved, read, System.nanoTime() - start);
+        return read;
+    }
+
+    private long hashMapped(final FileChannel channel, final long size, final HashFunction function)
+            throws IOException {
+        // throttled windows are small and faulted in up front, so the throttle sees the actual reads
+        final long window = throttle == null ? MAP_WINDOW : THROTTLED_MAP_WINDOW;
+        for (long position = 0; position < size; position += window) {
+            final long length = Math.min(window, size - position);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (throttle != null) {
+                throttle.acquire(length);
+                final long start = System.nanoTime();
+                buffer.load();
+                throttle.completed(length, length, System.nanoTime() - start);
+            }
+            function.update(buffer);
+        }
+        return size;
+    }
+
+    private long hashAsync(final Path path, final HashFunction function, final Buffers pooled) throws IOException {
+        final ByteBuffer[] buffers = pooled.async();
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            int current = 0;
+            long position = 0;
+            buffers[current].clear();
+            long reserved = reserve(ASYNC_BLOCK, size);
+            long issued = System.nanoTime();
+            Future<Integer> pending = channel.read(buffers[current], position);
+            try {
+                while (true) {
+                    final int read = await(pending);
+                    pending = null;
+                    if (throttle != null) {
+                        throttle.completed(reserved, read, System.nanoTime() - issued);
+                    }
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                    final ByteBuffer ready = buffers[current];
+                    current ^= 1;
+                    buffers[current].clear();
+                    reserved = reserve(ASYNC_BLOCK, size - position);
+                    issued = System.nanoTime();
+                    pending = channel.read(buffers[current], position);
+                    ready.flip();
+                    function.update(ready);
+                }
+                return position;
+            } finally {
+                if (pending != null) {
+                    // the buffer is reused by the next file, so the read must not outlive this call
+                    pending.cancel(false);
+                    awaitQuietly(pending);
+                }
+            }
+        }
+    }
+
+    // waits for the throttle before a read of up to `length` bytes with `remaining` bytes left in the file,
+    // returns the reservation: nothing is reserved for the read that finds the end of the file
+    private long reserve(final long length, final long remaining) throws IOException {
+        final long reserved = Math.max(0, Math.min(length, remaining));
+        if (throttle != null && reserved > 0) {
+            throttle.acquire(reserved);
+        }
+        return reserved;
+    }
+
+    private static int await(final Future<Integer> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void awaitQuietly(final Future<Integer> read) {
+        try {
+            read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException ignored) {
+            // only completion matters here
+        }
+    }
+}
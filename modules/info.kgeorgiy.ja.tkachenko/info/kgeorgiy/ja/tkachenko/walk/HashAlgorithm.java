@@ -0,0 +1,228 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+enum HashAlgorithm {
+    PJW("pjw", Long.BYTES, PJWHash::new),
+    CRC32C("crc32c", Integer.BYTES, CRC32CHash::new),
+    SHA256("sha-256", 32, () -> new DigestHash("SHA-256")),
+    XXHASH64("xxhash64", Long.BYTES, XXHash64::new),
+    PJW_LANES("pjw-lanes", Long.BYTES, LanesHash::new);
+
+    private final String name;
+    private final int length;
+    private final Supplier<HashFunction> factory;
+    private final byte[] zero;
+
+    HashAlgorithm(final String name, final int length, final Supplier<HashFunction> factory) {
+        this.name = name;
+        this.length = length;
+        this.factory = factory;
+        this.zero = new byte[length];
+    }
+
+    HashFunction create() {
+        return factory.get();
+    }
+
+    int length() {
+        return length;
+    }
+
+    // digest written for files that could not be read, must not be modified
+    byte[] zero() {
+        return zero;
+    }
+
+    static HashAlgorithm forName(final String name) throws WalkException {
+        for (final HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new WalkException("Unknown hash algorithm " + name + ", supported are " + names());
+    }
+
+    static String names() {
+        return Arrays.stream(values()).map(algorithm -> algorithm.name).collect(Collectors.joining("|"));
+    }
+
+    private static byte[] toBytes(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static class PJWHash implements HashFunction { // like ELF hash but for 64 bit
+        private long hash;
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            long hash = this.hash;
+            if (buffer.hasArray()) {
+                final byte[] array = buffer.array();
+                final int end = buffer.arrayOffset() + buffer.limit();
+                for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+                    hash = update(hash, array[i]);
+                }
+            } else {
+                final int limit = buffer.limit();
+                for (int i = buffer.position(); i < limit; i++) {
+                    hash = update(hash, buffer.get(i));
+                }
+            }
+            buffer.position(buffer.limit());
+            this.hash = hash;
+        }
+
+        private static long update(long hash, final byte b) {
+            hash = (hash << 8) + (b & 0xff);
+            final long high = hash & 0xFF00_0000_0000_0000L;
+            if (high != 0) {
+                hash ^= high >> 48;
+                hash &= ~high;
+            }
+            return hash;
+        }
+
+        @Override
+        public byte[] digest() {
+            return toBytes(hash);
+        }
+    }
+
+    private static class CRC32CHash implements HashFunction {
+        private final CRC32C crc = new CRC32C();
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            crc.update(buffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+        }
+    }
+
+    private static class DigestHash implements HashFunction {
+        private final MessageDigest digest;
+
+        DigestHash(final String algorithm) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError("Every Java platform supports " + algorithm, e);
+            }
+        }
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            return digest.digest();
+        }
+    }
+
+    private static class XXHash64 implements HashFunction { // seed 0, canonical big-endian digest
+        private static final long PRIME1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME3 = 0x165667B19E3779F9L;
+        private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME5 = 0x27D4EB2F165667C5L;
+        private static final int STRIPE = 32;
+
+        private long v1 = PRIME1 + PRIME2;
+        private long v2 = PRIME2;
+        private long v3 = 0;
+        private long v4 = -PRIME1;
+        private long total;
+        private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            total += buffer.remaining();
+            if (pending.position() > 0) {
+                while (pending.hasRemaining() && buffer.hasRemaining()) {
+                    pending.put(buffer.get());
+                }
+                if (pending.hasRemaining()) {
+                    return;
+                }
+                stripe(pending, 0);
+                pending.clear();
+            }
+            final ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int position = input.position();
+            final int limit = input.limit();
+            for (; limit - position >= STRIPE; position += STRIPE) {
+                stripe(input, position);
+            }
+            input.position(position);
+            pending.put(input);
+            buffer.position(limit);
+        }
+
+        private void stripe(final ByteBuffer buffer, final int position) {
+            v1 = round(v1, buffer.getLong(position));
+            v2 = round(v2, buffer.getLong(position + 8));
+            v3 = round(v3, buffer.getLong(position + 16));
+            v4 = round(v4, buffer.getLong(position + 24));
+        }
+
+        private static long round(final long acc, final long input) {
+            return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+        }
+
+        private static long merge(final long acc, final long value) {
+            return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+        }
+
+        @Override
+        public byte[] digest() {
+            long hash;
+            if (total >= STRIPE) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                        + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = merge(hash, v1);
+                hash = merge(hash, v2);
+                hash = merge(hash, v3);
+                hash = merge(hash, v4);
+            } else {
+                hash = PRIME5;
+            }
+            hash += total;
+
+            final int end = pending.position();
+            int i = 0;
+            for (; i + Long.BYTES <= end; i += Long.BYTES) {
+                hash ^= round(0, pending.getLong(i));
+                hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            }
+            if (i + Integer.BYTES <= end) {
+                hash ^= (pending.getInt(i) & 0xFFFF_FFFFL) * PRIME1;
+                hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+                i += Integer.BYTES;
+            }
+            for (; i < end; i++) {
+                hash ^= (pending.get(i) & 0xFF) * PRIME5;
+                hash = Long.rotateLeft(hash, 11) * PRIME1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+            return toBytes(hash);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// On-disk cache of file hashes keyed by absolute path, size, modification time and file key.
+// The file is an append-only log of checksummed records: a run killed in the middle loses only its unflushed tail,
+// which is detected and cut off on the next load. The log is rewritten atomically once most of it is superseded,
+// dropping also the entries of files that are gone or changed. A run holds <cache>.lock, so that the records
+// of concurrent runs are not interleaved: a cache already in use is refused.
+class HashCache implements AutoCloseable {
+    private static final int MAGIC = 0x57414C4B;
+    private static final int VERSION = 1;
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LOCK_SUFFIX = ".lock";
+    // files modified this close to the start of the run may change again within the same timestamp tick
+    static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path file;
+    private final HashAlgorithm algorithm;
+    private final FileLock lock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long startedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private DataOutputStream log;
+    private long records;
+
+    private static class Entry {
+        final long size;
+        final long modified;
+        final String fileKey;
+        final byte[] hash;
+        // looked up or stored by this run, so known to match its file
+        volatile boolean used;
+
+        Entry(final long size, final long modified, final String fileKey, final byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        Entry(final BasicFileAttributes attributes, final byte[] hash) {
+            this(attributes.size(), modified(attributes), fileKey(attributes), hash);
+        }
+
+        boolean matches(final BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && modified == modified(attributes)
+                    && fileKey.equals(fileKey(attributes));
+        }
+    }
+
+    private HashCache(final Path file, final HashAlgorithm algorithm, final FileLock lock) {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.lock = lock;
+    }
+
+    static HashCache open(final Path file, final HashAlgorithm algorithm) throws IOException {
+        final FileLock lock = lock(file);
+        try {
+            return open(file, algorithm, lock);
+        } catch (IOException | RuntimeException e) {
+            lock.channel().close();
+            throw e;
+        }
+    }
+
+    // the lock file is never replaced, unlike the cache itself
+    private static FileLock lock(final Path file) throws IOException {
+        final Path lockPath = file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+        final FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Hash cache " + file + " is used by another run");
+        }
+        return lock;
+    }
+
+    private static HashCache open(final Path file, final HashAlgorithm algorithm, final FileLock lock)
+            throws IOException {
+        final HashCache cache = new HashCache(file, algorithm, lock);
+        final long valid = Files.exists(file) ? cache.load() : -1;
+        if (valid < 0) {
+            cache.records = 0;
+            cache.entries.clear();
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                cache.writeHeader(out);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        cache.log = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND), BUFFER_SIZE));
+        return cache;
+    }
+
+    // returns length of the valid prefix of the log, or -1 if the cache was written for another version or algorithm
+    private long load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            long valid;
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a hash cache");
+                }
+                if (in.readInt() != VERSION || !in.readUTF().equals(algorithm.name())) {
+                    return -1;
+                }
+                valid = headerLength();
+            } catch (EOFException e) {
+                return -1;
+            }
+            final CRC32C crc = new CRC32C();
+            try {
+                while (true) {
+                    final int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD) {
+                        break;
+                    }
+                    final byte[] record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    readRecord(record);
+                    valid += Integer.BYTES + length + Integer.BYTES;
+                    records++;
+                }
+            } catch (EOFException ignored) {
+                // unfinished tail of an interrupted run
+            }
+            return valid;
+        }
+    }
+
+    private void readRecord(final byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final String path = readString(in);
+        final long size = in.readLong();
+        final long modified = in.readLong();
+        final String fileKey = readString(in);
+        final byte[] hash = new byte[algorithm.length()];
+        in.readFully(hash);
+        entries.put(path, new Entry(size, modified, fileKey, hash));
+    }
+
+    byte[] lookup(final Path path, final BasicFileAttributes attributes) {
+        final Entry entry = entries.get(key(path));
+        if (entry == null || !entry.matches(attributes)) {
+            return null;
+        }
+        entry.used = true;
+        return entry.hash;
+    }
+
+    void store(final Path path, final BasicFileAttributes attributes, final byte[] hash) {
+        if (modified(attributes) >= startedAt - RACY_WINDOW) {
+            return;
+        }
+        final String key = key(path);
+        final Entry entry = new Entry(attributes, hash);
+        entry.used = true;
+        entries.put(key, entry);
+        final byte[] record = toRecord(key, entry);
+        synchronized (this) {
+            if (log == null) {
+                return;
+            }
+            try {
+                writeRecord(log, record);
+                records++;
+            } catch (IOException e) {
+                System.err.println("Error while writing hash cache " + file + ", caching disabled: " + e.getMessage());
+                closeLog();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try (FileChannel ignored = lock.channel()) {
+            if (log == null) {
+                return;
+            }
+            log.close();
+            log = null;
+            if (records - entries.size() > entries.size()) {
+                compact();
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE))) {
+                writeHeader(out);
+                for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (current(entry.getKey(), entry.getValue())) {
+                        writeRecord(out, toRecord(entry.getKey(), entry.getValue()));
+                    }
+                }
+                out.flush();
+                stream.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // entries this run did not touch are kept unless their file is gone or changed
+    private static boolean current(final String path, final Entry entry) {
+        if (entry.used) {
+            return true;
+        }
+        try {
+            return entry.matches(Files.readAttributes(Paths.get(path), BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            // cannot tell, so the entry stays
+            return true;
+        }
+    }
+
+    private void closeLog() {
+        try {
+            log.close();
+        } catch (IOException ignored) {
+            // the log is abandoned anyway
+        }
+        log = null;
+    }
+
+    private void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(algorithm.name());
+    }
+
+    private long headerLength() {
+        return Integer.BYTES + Integer.BYTES + Short.BYTES + algorithm.name().length();
+    }
+
+    private static byte[] toRecord(final String path, final Entry entry) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeString(out, path);
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            writeString(out, entry.fileKey);
+            out.write(entry.hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException("In-memory write failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(final DataOutputStream out, final byte[] record) throws IOException {
+        final CRC32C crc = new CRC32C();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String key(final Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    static long modified(final BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    static String fileKey(final BasicFileAttributes attributes) {
+        final Object fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+}
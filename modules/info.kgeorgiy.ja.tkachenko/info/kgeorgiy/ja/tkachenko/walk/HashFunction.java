@@ -0,0 +1,12 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.nio.ByteBuffer;
+
+// Incremental hash of a single file, created by HashAlgorithm
+interface HashFunction {
+    // consumes bytes between position and limit of the buffer
+    void update(ByteBuffer buffer);
+
+    // big-endian digest of HashAlgorithm.length() bytes
+    byte[] digest();
+}
@@ -0,0 +1,8 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+
+// Destination of "<digest> <path>" results, implementations are safe for concurrent writers
+interface HashSink {
+    void write(byte[] hash, String line) throws IOException;
+}
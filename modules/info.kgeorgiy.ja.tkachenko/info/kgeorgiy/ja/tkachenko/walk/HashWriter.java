@@ -0,0 +1,91 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Writes "<hex digest> <path>\n" lines as UTF-8 straight into a reusable byte buffer,
+// byte-for-byte the same as a UTF-8 BufferedWriter (unpaired surrogates become '?'). Safe for concurrent writers
+class HashWriter implements HashSink, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    HashWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void write(final byte[] hash, final String line) throws IOException {
+        ensure(hash.length * 2 + 1);
+        for (final byte b : hash) {
+            buffer[position++] = HEX[(b >> 4) & 0xF];
+            buffer[position++] = HEX[b & 0xF];
+        }
+        buffer[position++] = ' ';
+        writeUTF8(line);
+        ensure(1);
+        buffer[position++] = '\n';
+    }
+
+    synchronized void newLine() throws IOException {
+        ensure(1);
+        buffer[position++] = '\n';
+    }
+
+    private void writeUTF8(final String s) throws IOException {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            ensure(4);
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensure(final int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    synchronized void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Block-parallel variant of PJW: byte i of the stream goes to lane i % LANES, every lane runs the PJW step
+// independently, and the lanes are folded with FNV-1a into 64 bits together with the length.
+// Lanes do not depend on each other, so whole blocks of LANES bytes are processed by a kernel:
+// a Vector API one when the optional info.kgeorgiy.ja.tkachenko.vector module is on the class path and
+// jdk.incubator.vector is added to the run, and the scalar one otherwise. Both give the same digest.
+class LanesHash implements HashFunction {
+    static final int LANES = 32;
+    static final long HIGH = 0xFF00_0000_0000_0000L;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final String VECTOR_KERNEL = "info.kgeorgiy.ja.tkachenko.walk.VectorLanesKernel";
+    private static final Kernel KERNEL = loadKernel();
+
+    private final long[] lanes = new long[LANES];
+    private long length;
+
+    // processes the whole blocks between `from` and `to`, which is a multiple of LANES bytes away
+    interface Kernel {
+        void update(long[] lanes, ByteBuffer buffer, int from, int to);
+    }
+
+    static long step(final long lane, final int b) {
+        final long hash = (lane << 8) + b;
+        final long high = hash & HIGH;
+        return (hash ^ (high >>> 48)) & ~HIGH;
+    }
+
+    private static class ScalarKernel implements Kernel {
+        @Override
+        public void update(final long[] lanes, final ByteBuffer buffer, final int from, final int to) {
+            if (buffer.hasArray()) {
+                final byte[] array = buffer.array();
+                final int offset = buffer.arrayOffset();
+                for (int i = offset + from; i < offset + to; i += LANES) {
+                    for (int j = 0; j < LANES; j++) {
+                        lanes[j] = step(lanes[j], array[i + j] & 0xFF);
+                    }
+                }
+            } else {
+                for (int i = from; i < to; i += LANES) {
+                    for (int j = 0; j < LANES; j++) {
+                        lanes[j] = step(lanes[j], buffer.get(i + j) & 0xFF);
+                    }
+                }
+            }
+        }
+    }
+
+    // the vector kernel is used only if it loads and agrees with the scalar one
+    private static Kernel loadKernel() {
+        final Kernel scalar = new ScalarKernel();
+        try {
+            final Kernel vector = (Kernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            final ByteBuffer sample = ByteBuffer.allocate(LANES * 8);
+            for (int i = 0; i < sample.capacity(); i++) {
+                sample.put(i, (byte) (i * 151 + 7));
+            }
+            final long[] expected = new long[LANES];
+            final long[] actual = new long[LANES];
+            scalar.update(expected, sample, 0, sample.capacity());
+            vector.update(actual, sample, 0, sample.capacity());
+            return Arrays.equals(expected, actual) ? vector : scalar;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return scalar;
+        }
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        int position = buffer.position();
+        final int limit = buffer.limit();
+        while (position < limit && length % LANES != 0) {
+            stepLane(buffer.get(position++));
+        }
+        final int blocks = (limit - position) / LANES * LANES;
+        if (blocks > 0) {
+            KERNEL.update(lanes, buffer, position, position + blocks);
+            position += blocks;
+            length += blocks;
+        }
+        while (position < limit) {
+            stepLane(buffer.get(position++));
+        }
+        buffer.position(limit);
+    }
+
+    private void stepLane(final byte b) {
+        final int lane = (int) (length++ % LANES);
+        lanes[lane] = step(lanes[lane], b & 0xFF);
+    }
+
+    @Override
+    public byte[] digest() {
+        long hash = FNV_OFFSET ^ length;
+        for (final long lane : lanes) {
+            hash = (hash ^ lane) * FNV_PRIME;
+        }
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+}
@@ -0,0 +1,25 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+// Source of input lines, the only way the walkers read their input
+interface LineReader extends Closeable {
+    // the next line, null at the end of the input
+    String readLine() throws IOException;
+
+    static LineReader of(final BufferedReader reader) {
+        return new LineReader() {
+            @Override
+            public String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Reads the input in batches and hashes every batch in disk order instead of list order: grouped by parent
+// directory, then by inode, which on most file systems follows the placement of data on the disk.
+// Results of a batch are kept until it is done and written in input order.
+class LocalityWalker implements AutoCloseable {
+    private static final int BATCH = 4096;
+    private static final Comparator<Task> BY_DIRECTORY = Comparator.comparing(task -> task.directory);
+    private static final Comparator<Task> BY_LOCATION = BY_DIRECTORY.thenComparingLong(task -> task.inode);
+
+    private final FileHasher hasher;
+    private final ExecutorService executor;
+    private boolean inodes = true;
+
+    private static class Task {
+        final String line;
+        final Path path;
+        final String directory;
+        long inode = Long.MAX_VALUE;
+        byte[] hash;
+        Future<byte[]> pending;
+
+        Task(final String line, final Path path) {
+            this.line = line;
+            this.path = path;
+            final Path parent = path == null ? null : path.toAbsolutePath().getParent();
+            this.directory = parent == null ? "" : parent.toString();
+        }
+    }
+
+    LocalityWalker(final int threads, final FileHasher hasher) {
+        this.hasher = hasher;
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    void walk(final LineReader reader, final HashSink writer, final Checkpoint checkpoint)
+            throws IOException, WalkException {
+        final List<Task> batch = new ArrayList<>(BATCH);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            batch.add(task(line));
+            if (batch.size() == BATCH) {
+                walk(batch, writer, checkpoint);
+                batch.clear();
+            }
+        }
+        walk(batch, writer, checkpoint);
+    }
+
+    private Task task(final String line) {
+        try {
+            return new Task(line, Paths.get(line));
+        } catch (InvalidPathException e) {
+            final Task task = new Task(line, null);
+            task.hash = hasher.invalidPath(line, e.getMessage());
+            return task;
+        }
+    }
+
+    private void walk(final List<Task> batch, final HashSink writer, final Checkpoint checkpoint)
+            throws IOException, WalkException {
+        final Task[] order = batch.toArray(new Task[0]);
+        // inodes are looked up directory by directory too, so metadata reads are local as well
+        Arrays.sort(order, BY_DIRECTORY);
+        for (final Task task : order) {
+            readInode(task);
+        }
+        Arrays.sort(order, BY_LOCATION);
+
+        for (final Task task : order) {
+            if (task.path == null) {
+                // already reported when the line was read
+                continue;
+            }
+            if (executor == null) {
+                task.hash = hasher.hashFile(task.path, task.line);
+            } else {
+                task.pending = executor.submit(() -> hasher.hashFile(task.path, task.line));
+            }
+        }
+        for (final Task task : batch) {
+            writer.write(task.pending == null ? task.hash : get(task), task.line);
+            checkpoint.lineWritten();
+        }
+    }
+
+    private void readInode(final Task task) {
+        if (!inodes || task.path == null) {
+            return;
+        }
+        try {
+            task.inode = (Long) Files.getAttribute(task.path, "unix:ino");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // no unix view on this platform, directory order only
+            inodes = false;
+        } catch (IOException | SecurityException ignored) {
+            // reported when the file is hashed
+        }
+    }
+
+    private static byte[] get(final Task task) throws WalkException {
+        try {
+            return task.pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkException("Interrupted while waiting for hash of " + task.line, e);
+        } catch (ExecutionException e) {
+            throw new WalkException("Error while hashing " + task.line, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
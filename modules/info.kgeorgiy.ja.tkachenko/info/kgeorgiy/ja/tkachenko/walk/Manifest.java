@@ -0,0 +1,220 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Memory-mapped binary manifest written by `Walk -format binary`:
+//   header   magic, version, algorithm name, entry count
+//   hashes   fixed-size digest of every entry, entries sorted by UTF-8 path bytes
+//   index    entry numbers sorted by digest
+//   paths    front-coded paths: varint shared prefix length, varint suffix length, suffix;
+//            the prefix restarts every BLOCK entries
+//   blocks   absolute offset of every restart point
+//   trailer  absolute offset of the blocks section
+// Both lookups are binary searches over the mapping followed by decoding at most one block per result.
+class Manifest {
+    static final int MAGIC = 0x57414C4D;
+    static final int VERSION = 1;
+    static final int BLOCK = 16;
+
+    private final ByteBuffer data;
+    private final HashAlgorithm algorithm;
+    private final int hashLength;
+    private final int count;
+    private final int hashes;
+    private final int index;
+    private final int blocks;
+
+    private Manifest(final ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.limit() < Integer.BYTES * 2 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a Walk manifest");
+        }
+        if (data.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported manifest version " + data.getInt(Integer.BYTES));
+        }
+        final byte[] name = new byte[data.getShort(Integer.BYTES * 2)];
+        data.get(Integer.BYTES * 2 + Short.BYTES, name);
+        try {
+            algorithm = HashAlgorithm.valueOf(new String(name, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown manifest hash algorithm", e);
+        }
+        hashLength = algorithm.length();
+        final int header = headerLength(algorithm.name());
+        count = data.getInt(header - Integer.BYTES);
+        hashes = header;
+        index = hashes + count * hashLength;
+        blocks = (int) data.getLong(data.limit() - Long.BYTES);
+    }
+
+    static int headerLength(final String algorithm) {
+        return Integer.BYTES * 2 + Short.BYTES + algorithm.length() + Integer.BYTES;
+    }
+
+    static Manifest open(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Manifest " + file + " is too large to map");
+            }
+            return new Manifest(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // digest of the first entry with the given path, or null
+    byte[] hashOf(final String path) {
+        if (count == 0) {
+            return null;
+        }
+        final byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        // last block starting strictly before the key, equal paths may continue from the previous block
+        int low = 0;
+        int high = (count + BLOCK - 1) / BLOCK - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (compareFirst(mid, key) < 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final Decoder decoder = new Decoder(low);
+        for (int i = low * BLOCK; i < count; i++) {
+            final int compare = decoder.next(key);
+            if (compare == 0) {
+                return hash(i);
+            } else if (compare > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    // paths of all entries with the given digest, in path order
+    List<String> pathsOf(final byte[] hash) {
+        final List<String> paths = new ArrayList<>();
+        if (hash.length != hashLength) {
+            return paths;
+        }
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareHash(data.getInt(index + mid * Integer.BYTES), hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < count; i++) {
+            final int id = data.getInt(index + i * Integer.BYTES);
+            if (compareHash(id, hash) != 0) {
+                break;
+            }
+            paths.add(path(id));
+        }
+        return paths;
+    }
+
+    byte[] hash(final int id) {
+        final byte[] hash = new byte[hashLength];
+        data.get(hashes + id * hashLength, hash);
+        return hash;
+    }
+
+    String path(final int id) {
+        final Decoder decoder = new Decoder(id / BLOCK);
+        for (int i = id % BLOCK; i >= 0; i--) {
+            decoder.next(null);
+        }
+        return new String(decoder.path, 0, decoder.length, StandardCharsets.UTF_8);
+    }
+
+    private int compareHash(final int id, final byte[] hash) {
+        final int offset = hashes + id * hashLength;
+        for (int i = 0; i < hashLength; i++) {
+            final int compare = Byte.toUnsignedInt(data.get(offset + i)) - Byte.toUnsignedInt(hash[i]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    private int compareFirst(final int block, final byte[] key) {
+        int position = blockOffset(block);
+        position = skipVarInt(position);
+        final int length = readVarInt(position);
+        position = skipVarInt(position);
+        for (int i = 0; i < length && i < key.length; i++) {
+            final int compare = Byte.toUnsignedInt(data.get(position + i)) - Byte.toUnsignedInt(key[i]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int blockOffset(final int block) {
+        return (int) data.getLong(blocks + block * Long.BYTES);
+    }
+
+    private int readVarInt(int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = data.get(position++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private int skipVarInt(int position) {
+        while (data.get(position++) < 0) {
+            // continuation byte
+        }
+        return position;
+    }
+
+    // sequential reader of the path table starting at a restart point
+    private class Decoder {
+        byte[] path = new byte[256];
+        int length;
+        int position;
+
+        Decoder(final int block) {
+            position = blockOffset(block);
+        }
+
+        // decodes the next path and compares it with the key, if any
+        int next(final byte[] key) {
+            final int shared = readVarInt(position);
+            position = skipVarInt(position);
+            final int suffix = readVarInt(position);
+            position = skipVarInt(position);
+            length = shared + suffix;
+            if (length > path.length) {
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+            }
+            data.get(position, path, shared, suffix);
+            position += suffix;
+            return key == null ? 0 : Arrays.compareUnsigned(path, 0, length, key, 0, key.length);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.HexFormat;
+import java.util.List;
+
+// Answers queries against a binary manifest, printing results in the text format of Walk:
+//   path <path>...   digest of each path
+//   hash <hex>...    every path with each digest
+public class ManifestLookup {
+    private static final String USAGE = "Invalid program parameters. "
+            + "The correct run format is \"java ManifestLookup <manifest> path|hash <key>...\"";
+
+    public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (WalkException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void run(String[] args) throws WalkException {
+        if (args == null || args.length < 3 || !(args[1].equals("path") || args[1].equals("hash"))) {
+            throw new WalkException(USAGE);
+        }
+        final Manifest manifest;
+        try {
+            manifest = Manifest.open(Paths.get(args[0]));
+        } catch (InvalidPathException e) {
+            throw new WalkException("Invalid manifest path", e);
+        } catch (IOException e) {
+            throw new WalkException("Error while opening manifest", e);
+        }
+        final HexFormat hex = HexFormat.of();
+        for (int i = 2; i < args.length; i++) {
+            if (args[1].equals("path")) {
+                final byte[] hash = manifest.hashOf(args[i]);
+                if (hash == null) {
+                    System.err.println("Path not found: " + args[i]);
+                } else {
+                    System.out.println(hex.formatHex(hash) + " " + args[i]);
+                }
+            } else {
+                final byte[] hash;
+                try {
+                    hash = hex.parseHex(args[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new WalkException("Invalid digest " + args[i], e);
+                }
+                final List<String> paths = manifest.pathsOf(hash);
+                if (paths.isEmpty()) {
+                    System.err.println("Digest not found: " + args[i]);
+                }
+                for (final String path : paths) {
+                    System.out.println(args[i] + " " + path);
+                }
+            }
+        }
+    }
+}
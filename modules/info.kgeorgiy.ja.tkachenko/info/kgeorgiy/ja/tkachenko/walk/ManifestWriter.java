@@ -0,0 +1,111 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Collects results in memory and writes them as a binary manifest on close, see Manifest for the layout
+class ManifestWriter implements HashSink, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final HashAlgorithm algorithm;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private static class Entry {
+        final byte[] path;
+        final byte[] hash;
+        // position in path order
+        int id;
+
+        Entry(final byte[] path, final byte[] hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+    }
+
+    ManifestWriter(final OutputStream out, final HashAlgorithm algorithm) {
+        this.out = out;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public synchronized void write(final byte[] hash, final String line) {
+        entries.add(new Entry(line.getBytes(StandardCharsets.UTF_8), hash));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE))) {
+            write(data);
+        }
+    }
+
+    private void write(final DataOutputStream data) throws IOException {
+        // stable sort keeps repeated paths in input order
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.path, b.path));
+        final int count = entries.size();
+        for (int i = 0; i < count; i++) {
+            entries.get(i).id = i;
+        }
+
+        data.writeInt(Manifest.MAGIC);
+        data.writeInt(Manifest.VERSION);
+        data.writeUTF(algorithm.name());
+        data.writeInt(count);
+        long position = Manifest.headerLength(algorithm.name());
+
+        for (final Entry entry : entries) {
+            data.write(entry.hash);
+        }
+        position += (long) count * algorithm.length();
+
+        // stable sort keeps ids of equal hashes ascending
+        final List<Entry> byHash = new ArrayList<>(entries);
+        byHash.sort((a, b) -> Arrays.compareUnsigned(a.hash, b.hash));
+        for (final Entry entry : byHash) {
+            data.writeInt(entry.id);
+        }
+        position += (long) count * Integer.BYTES;
+
+        final long[] blocks = new long[(count + Manifest.BLOCK - 1) / Manifest.BLOCK];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            final byte[] path = entries.get(i).path;
+            int shared = 0;
+            if (i % Manifest.BLOCK == 0) {
+                blocks[i / Manifest.BLOCK] = position;
+            } else {
+                shared = Arrays.mismatch(previous, path);
+                shared = shared < 0 ? path.length : Math.min(shared, path.length);
+            }
+            position += writeVarInt(data, shared);
+            position += writeVarInt(data, path.length - shared);
+            data.write(path, shared, path.length - shared);
+            position += path.length - shared;
+            previous = path;
+        }
+
+        for (final long block : blocks) {
+            data.writeLong(block);
+        }
+        data.writeLong(position);
+    }
+
+    private static int writeVarInt(final DataOutputStream data, int value) throws IOException {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytes++;
+        }
+        data.writeByte(value);
+        return bytes;
+    }
+}
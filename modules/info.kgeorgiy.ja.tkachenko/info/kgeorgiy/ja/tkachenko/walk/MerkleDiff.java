@@ -0,0 +1,54 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Compares two Merkle trees saved by `Walk -mode merkle -tree <file>`, for example of two replicas,
+// printing "- path", "+ path" and "* path" for entries missing from the second tree, new in it and changed.
+// Subtrees with equal digests are skipped without looking inside.
+public class MerkleDiff {
+    public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (WalkException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void run(String[] args) throws WalkException {
+        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+            throw new WalkException("Invalid program parameters. "
+                    + "The correct run format is \"java MerkleDiff <tree> <tree>\"");
+        }
+        MerkleTree left = read(args[0]);
+        MerkleTree right = read(args[1]);
+        if (left.algorithm != right.algorithm) {
+            throw new WalkException("Trees are built with different hash algorithms");
+        }
+        if (left.roots.size() == 1 && right.roots.size() == 1) {
+            // replicas mounted at different paths
+            MerkleTree.Node leftRoot = left.roots.values().iterator().next();
+            MerkleTree.Node rightRoot = right.roots.values().iterator().next();
+            MerkleTree.diff(leftRoot, rightRoot, leftRoot.name, System.out::println);
+            return;
+        }
+        Set<String> roots = new LinkedHashSet<>(left.roots.keySet());
+        roots.addAll(right.roots.keySet());
+        for (String root : roots) {
+            MerkleTree.diff(left.roots.get(root), right.roots.get(root), root, System.out::println);
+        }
+    }
+
+    private static MerkleTree read(String file) throws WalkException {
+        try {
+            return MerkleTree.read(Paths.get(file));
+        } catch (InvalidPathException e) {
+            throw new WalkException("Path " + file + " is invalid", e);
+        } catch (IOException e) {
+            throw new WalkException("Error while reading Merkle tree " + file, e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+// Merkle trees of the walked roots, every root is named by its input line. A file node keeps the digest of its contents
+// with size, modification time and file key, a directory digest covers kind, name and digest of every child in name order.
+// Saved trees let the next run skip unchanged files and reuse every directory whose children were all reused.
+class MerkleTree {
+    private static final int MAGIC = 0x57414C54;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte FILE = 0;
+    private static final byte DIRECTORY = 1;
+
+    final HashAlgorithm algorithm;
+    final Map<String, Node> roots = new LinkedHashMap<>();
+
+    static class Node {
+        static final Comparator<Node> BY_NAME = Comparator.comparing(node -> node.name);
+
+        final String name;
+        final boolean directory;
+        final long size;
+        final long modified;
+        final String fileKey;
+        final byte[] hash;
+        final List<Node> children;
+
+        private Node(final String name, final boolean directory, final long size, final long modified,
+                     final String fileKey, final byte[] hash, final List<Node> children) {
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+            this.children = children;
+        }
+
+        // `modified` is negative for files whose digest must not be reused
+        static Node file(final String name, final long size, final long modified, final String fileKey,
+                         final byte[] hash) {
+            return new Node(name, false, size, modified, fileKey, hash, List.of());
+        }
+
+        // `children` must be sorted by name
+        static Node directory(final String name, final List<Node> children, final HashAlgorithm algorithm) {
+            final HashFunction function = algorithm.create();
+            final ByteBuffer kind = ByteBuffer.allocate(1);
+            for (final Node child : children) {
+                function.update(kind.clear().put(child.directory ? DIRECTORY : FILE).flip());
+                function.update(ByteBuffer.wrap(child.name.getBytes(StandardCharsets.UTF_8)));
+                function.update(kind.clear().put((byte) 0).flip());
+                function.update(ByteBuffer.wrap(child.hash));
+            }
+            return new Node(name, true, 0, -1, "", function.digest(), List.copyOf(children));
+        }
+
+        static Node failed(final String name, final boolean directory, final HashAlgorithm algorithm) {
+            return new Node(name, directory, -1, -1, "", algorithm.zero(), List.of());
+        }
+
+        boolean matches(final BasicFileAttributes attributes) {
+            return !directory
+                    && modified >= 0
+                    && size == attributes.size()
+                    && modified == HashCache.modified(attributes)
+                    && fileKey.equals(HashCache.fileKey(attributes));
+        }
+
+        Map<String, Node> childrenByName() {
+            final Map<String, Node> byName = new TreeMap<>();
+            for (final Node child : children) {
+                byName.put(child.name, child);
+            }
+            return byName;
+        }
+    }
+
+    MerkleTree(final HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    // previous state for incremental runs, empty if there is none or it was built with another algorithm
+    static MerkleTree load(final Path file, final HashAlgorithm algorithm) {
+        try {
+            final MerkleTree tree = read(file);
+            if (tree.algorithm == algorithm) {
+                return tree;
+            }
+        } catch (NoSuchFileException ignored) {
+            // first run
+        } catch (IOException e) {
+            System.err.println("Could not read Merkle tree " + file + ", starting over: " + e.getMessage());
+        }
+        return new MerkleTree(algorithm);
+    }
+
+    static MerkleTree read(final Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Merkle tree");
+            }
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported Merkle tree version in " + file);
+            }
+            final MerkleTree tree;
+            try {
+                tree = new MerkleTree(HashAlgorithm.valueOf(in.readUTF()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown hash algorithm in " + file, e);
+            }
+            for (int roots = in.readInt(); roots > 0; roots--) {
+                final Node root = readNode(in, tree.algorithm);
+                tree.roots.put(root.name, root);
+            }
+            return tree;
+        } catch (EOFException e) {
+            throw new IOException("Merkle tree " + file + " is truncated", e);
+        }
+    }
+
+    private static Node readNode(final DataInputStream in, final HashAlgorithm algorithm) throws IOException {
+        final boolean directory = in.readBoolean();
+        final String name = in.readUTF();
+        final byte[] hash = new byte[algorithm.length()];
+        in.readFully(hash);
+        if (!directory) {
+            return Node.file(name, in.readLong(), in.readLong(), in.readUTF(), hash);
+        }
+        final List<Node> children = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            children.add(readNode(in, algorithm));
+        }
+        return new Node(name, true, 0, -1, "", hash, List.copyOf(children));
+    }
+
+    // written to a temporary file and moved over the old tree, so an interrupted run keeps the previous state
+    void save(final Path file) throws IOException {
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(algorithm.name());
+                out.writeInt(roots.size());
+                for (final Node root : roots.values()) {
+                    writeNode(out, root);
+                }
+                out.flush();
+                stream.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeNode(final DataOutputStream out, final Node node) throws IOException {
+        out.writeBoolean(node.directory);
+        out.writeUTF(node.name);
+        out.write(node.hash);
+        if (node.directory) {
+            out.writeInt(node.children.size());
+            for (final Node child : node.children) {
+                writeNode(out, child);
+            }
+        } else {
+            out.writeLong(node.size);
+            out.writeLong(node.modified);
+            out.writeUTF(node.fileKey);
+        }
+    }
+
+    // reports "- path", "+ path" and "* path" for removed, added and changed entries,
+    // descending only into directories whose digests differ
+    static void diff(final Node left, final Node right, final String path, final Consumer<String> out) {
+        if (left == null) {
+            out.accept("+ " + path);
+        } else if (right == null) {
+            out.accept("- " + path);
+        } else if (left.directory != right.directory) {
+            out.accept("* " + path);
+        } else if (!Arrays.equals(left.hash, right.hash)) {
+            if (!left.directory) {
+                out.accept("* " + path);
+                return;
+            }
+            final Map<String, Node> leftChildren = left.childrenByName();
+            final Map<String, Node> rightChildren = right.childrenByName();
+            final TreeSet<String> names = new TreeSet<>(leftChildren.keySet());
+            names.addAll(rightChildren.keySet());
+            for (final String name : names) {
+                diff(leftChildren.get(name), rightChildren.get(name), path + File.separator + name, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+// Builds Merkle trees of the listed roots bottom-up with fork/join and writes the digest of every root
+// and every directory under it. Files that match the previous tree by size, modification time and file key
+// are not read, directories whose children are all reused keep their previous node.
+class MerkleWalker implements AutoCloseable {
+    private static final int FILE_BATCH = 64;
+
+    private final ForkJoinPool pool;
+    private final FileHasher hasher;
+    private final HashAlgorithm algorithm;
+    private final MerkleTree previous;
+    private final MerkleTree current;
+    private final long startedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+    MerkleWalker(final int threads, final FileHasher hasher, final MerkleTree previous) {
+        this.pool = new ForkJoinPool(threads);
+        this.hasher = hasher;
+        this.algorithm = hasher.algorithm();
+        this.previous = previous;
+        this.current = new MerkleTree(algorithm);
+    }
+
+    void walk(final String line, final HashSink writer) throws IOException {
+        final Path path;
+        try {
+            path = Paths.get(line);
+        } catch (InvalidPathException e) {
+            writer.write(hasher.invalidPath(line, e.getMessage()), line);
+            return;
+        }
+        final MerkleTree.Node old = previous.roots.get(line);
+        final MerkleTree.Node root = Files.isDirectory(path)
+                ? pool.invoke(new DirectoryTask(path, line, old))
+                : file(path, line, old);
+        current.roots.put(line, root);
+        write(root, path, line, writer);
+    }
+
+    // the tree of this run, to be saved for the next one
+    MerkleTree tree() {
+        return current;
+    }
+
+    private static void write(final MerkleTree.Node node, final Path path, final String name, final HashSink writer)
+            throws IOException {
+        writer.write(node.hash, name);
+        for (final MerkleTree.Node child : node.children) {
+            if (child.directory) {
+                final Path childPath = path.resolve(child.name);
+                write(child, childPath, childPath.toString(), writer);
+            }
+        }
+    }
+
+    private MerkleTree.Node file(final Path path, final String name, final MerkleTree.Node old) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return MerkleTree.Node.file(name, -1, -1, "", hasher.hashFile(path, path.toString()));
+        }
+        if (old != null && old.matches(attributes)) {
+            return old;
+        }
+        final byte[] hash = hasher.hashFile(path, path.toString());
+        final long modified = HashCache.modified(attributes);
+        // failed reads and files that may still change within the same timestamp tick are hashed again next time
+        final boolean reusable = hash != algorithm.zero() && modified < startedAt - HashCache.RACY_WINDOW;
+        return MerkleTree.Node.file(name, attributes.size(), reusable ? modified : -1,
+                HashCache.fileKey(attributes), hash);
+    }
+
+    private List<MerkleTree.Node> files(final List<Path> files, final Map<String, MerkleTree.Node> old) {
+        final List<MerkleTree.Node> nodes = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            final String name = file.getFileName().toString();
+            nodes.add(file(file, name, old.get(name)));
+        }
+        return nodes;
+    }
+
+    private class DirectoryTask extends RecursiveTask<MerkleTree.Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String name;
+        private final MerkleTree.Node old;
+
+        DirectoryTask(final Path directory, final String name, final MerkleTree.Node old) {
+            this.directory = directory;
+            this.name = name;
+            this.old = old != null && old.directory ? old : null;
+        }
+
+        @Override
+        protected MerkleTree.Node compute() {
+            final Map<String, MerkleTree.Node> oldChildren = old == null ? Map.of() : old.childrenByName();
+            final List<ForkJoinTask<MerkleTree.Node>> directories = new ArrayList<>();
+            final List<ForkJoinTask<List<MerkleTree.Node>>> batches = new ArrayList<>();
+            List<Path> files = new ArrayList<>(FILE_BATCH);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (final Path entry : stream) {
+                    final String entryName = entry.getFileName().toString();
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        directories.add(new DirectoryTask(entry, entryName, oldChildren.get(entryName)).fork());
+                    } else {
+                        files.add(entry);
+                        if (files.size() == FILE_BATCH) {
+                            batches.add(new FileBatchTask(files, oldChildren).fork());
+                            files = new ArrayList<>(FILE_BATCH);
+                        }
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                hasher.failed("listing directory", directory.toString(), e);
+                directories.forEach(ForkJoinTask::join);
+                batches.forEach(ForkJoinTask::join);
+                return MerkleTree.Node.failed(name, true, algorithm);
+            }
+
+            final List<MerkleTree.Node> children = files(files, oldChildren);
+            for (final ForkJoinTask<List<MerkleTree.Node>> batch : batches) {
+                children.addAll(batch.join());
+            }
+            for (final ForkJoinTask<MerkleTree.Node> task : directories) {
+                children.add(task.join());
+            }
+            children.sort(MerkleTree.Node.BY_NAME);
+            if (old != null && sameNodes(children, old.children)) {
+                return old;
+            }
+            return MerkleTree.Node.directory(name, children, algorithm);
+        }
+    }
+
+    private static boolean sameNodes(final List<MerkleTree.Node> nodes, final List<MerkleTree.Node> old) {
+        if (nodes.size() != old.size()) {
+            return false;
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) != old.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class FileBatchTask extends RecursiveTask<List<MerkleTree.Node>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final Map<String, MerkleTree.Node> old;
+
+        FileBatchTask(final List<Path> files, final Map<String, MerkleTree.Node> old) {
+            this.files = files;
+            this.old = old;
+        }
+
+        @Override
+        protected List<MerkleTree.Node> compute() {
+            return files(files, old);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Classifies the input lines batch by batch before anything is hashed, so that stale entries of a list cost
+// neither an open nor an exception. Lines are grouped by parent directory, and a directory holding enough lines
+// of the batch is listed once: names absent from the listing are missing. A failed open costs several stats,
+// so a directory is listed only if it has at most MAX_ENTRIES_PER_LINE entries per line of the batch.
+// When the hashing needs attributes anyway (for the cache), the remaining paths are read with Files.readAttributes
+// here, directories and inaccessible paths are found without an open, and regular files carry their attributes.
+// Otherwise opening a file is the cheapest check, and the remaining paths are left to the hashing.
+// Failures carry the message and the exception type the hashing would have reported.
+class MetadataPrefetcher {
+    static final int BATCH = 1024;
+    private static final int LIST_THRESHOLD = 8;
+    private static final int MAX_ENTRIES_PER_LINE = 4;
+    private static final int MAX_REMEMBERED_DIRECTORIES = 1 << 12;
+
+    enum Kind { UNKNOWN, INVALID, MISSING, DIRECTORY, UNREADABLE, REGULAR }
+
+    static class Status {
+        final String line;
+        final Path path;
+        Kind kind = Kind.UNKNOWN;
+        BasicFileAttributes attributes;
+        String error;
+        String errorType;
+
+        private Status(final String line, final Path path) {
+            this.line = line;
+            this.path = path;
+        }
+
+        // nothing is known yet, the line is resolved when it is hashed
+        static Status unchecked(final String line) {
+            return new Status(line, null);
+        }
+
+        boolean failed() {
+            return error != null;
+        }
+
+        private void fail(final Kind kind, final String errorType, final String error) {
+            this.kind = kind;
+            this.errorType = errorType;
+            this.error = error;
+        }
+    }
+
+    private final boolean attributes;
+    // directories found too large to list, with the number of entries seen before the listing was abandoned
+    private final Map<Path, Integer> largeDirectories = new HashMap<>();
+
+    MetadataPrefetcher(final boolean attributes) {
+        this.attributes = attributes;
+    }
+
+    // up to BATCH classified lines in input order, empty at the end of the input
+    List<Status> next(final LineReader reader) throws IOException {
+        final List<Status> batch = new ArrayList<>();
+        final Map<Path, List<Status>> directories = new HashMap<>();
+        String line;
+        while (batch.size() < BATCH && (line = reader.readLine()) != null) {
+            final Status status = status(line);
+            batch.add(status);
+            if (status.path != null) {
+                final Path directory = listable(status.path) ? status.path.toAbsolutePath().getParent() : null;
+                if (directory != null) {
+                    directories.computeIfAbsent(directory, d -> new ArrayList<>()).add(status);
+                } else if (attributes) {
+                    stat(status);
+                }
+            }
+        }
+        for (final Map.Entry<Path, List<Status>> entry : directories.entrySet()) {
+            final List<Status> statuses = entry.getValue();
+            final Set<Path> names = list(entry.getKey(), statuses.size());
+            Set<String> folded = null;
+            for (final Status status : statuses) {
+                final Path name = status.path.getFileName();
+                if (names != null && !names.contains(name)) {
+                    if (folded == null) {
+                        folded = fold(names);
+                    }
+                    if (!folded.contains(fold(name))) {
+                        status.fail(Kind.MISSING, NoSuchFileException.class.getSimpleName(), status.path.toString());
+                        continue;
+                    }
+                }
+                if (attributes) {
+                    stat(status);
+                }
+            }
+        }
+        return batch;
+    }
+
+    private static Status status(final String line) {
+        try {
+            return new Status(line, Paths.get(line));
+        } catch (InvalidPathException e) {
+            final Status status = new Status(line, null);
+            status.fail(Kind.INVALID, null, e.getMessage());
+            return status;
+        }
+    }
+
+    private static boolean listable(final Path path) {
+        final Path name = path.getFileName();
+        return name != null && !name.toString().equals(".") && !name.toString().equals("..");
+    }
+
+    // a name absent from the listing is also compared case- and normalization-insensitively,
+    // so that on any file system it cannot be opened
+    private static String fold(final Path name) {
+        return Normalizer.normalize(name.toString(), Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> fold(final Set<Path> names) {
+        final Set<String> folded = new HashSet<>();
+        for (final Path name : names) {
+            folded.add(fold(name));
+        }
+        return folded;
+    }
+
+    // null if the directory is not worth listing for `lines` lines or cannot be listed
+    private Set<Path> list(final Path directory, final int lines) {
+        final int limit = lines * MAX_ENTRIES_PER_LINE;
+        if (lines < LIST_THRESHOLD || largeDirectories.getOrDefault(directory, 0) > limit) {
+            return null;
+        }
+        final Set<Path> names = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (final Path entry : entries) {
+                if (names.size() == limit) {
+                    if (largeDirectories.size() >= MAX_REMEMBERED_DIRECTORIES) {
+                        largeDirectories.clear();
+                    }
+                    largeDirectories.put(directory, limit + 1);
+                    return null;
+                }
+                names.add(entry.getFileName());
+            }
+            return names;
+        } catch (IOException | DirectoryIteratorException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static void stat(final Status status) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(status.path, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                status.fail(Kind.DIRECTORY, IOException.class.getSimpleName(), "Is a directory");
+            } else if (attributes.isRegularFile()) {
+                status.kind = Kind.REGULAR;
+                status.attributes = attributes;
+            }
+            // devices and pipes are left to the hashing, as are files without read permission:
+            // checking the permission would cost every file a system call
+        } catch (NoSuchFileException e) {
+            status.fail(Kind.MISSING, NoSuchFileException.class.getSimpleName(), e.getMessage());
+        } catch (AccessDeniedException e) {
+            status.fail(Kind.UNREADABLE, AccessDeniedException.class.getSimpleName(), e.getMessage());
+        } catch (IOException | SecurityException ignored) {
+            // the hashing reports its own error
+        }
+    }
+}
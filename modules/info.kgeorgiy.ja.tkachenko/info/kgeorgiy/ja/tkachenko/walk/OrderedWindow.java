@@ -0,0 +1,89 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Hashes computed on an executor and written strictly in submission order, with at most `size` of them in flight:
+// a submission to a full window first waits for the oldest hash and writes it
+class OrderedWindow {
+    private final ExecutorService executor;
+    private final int size;
+    private final HashSink writer;
+    private final Queue<Pending> pending;
+    private volatile boolean abandoned;
+
+    private static class Pending {
+        final String line;
+        final Future<byte[]> hash;
+
+        Pending(final String line, final Future<byte[]> hash) {
+            this.line = line;
+            this.hash = hash;
+        }
+    }
+
+    OrderedWindow(final ExecutorService executor, final int size, final HashSink writer) {
+        this.executor = executor;
+        this.size = size;
+        this.writer = writer;
+        this.pending = new ArrayDeque<>(size);
+    }
+
+    void submit(final String line, final Callable<byte[]> task) throws IOException, WalkException {
+        makeRoom();
+        pending.add(new Pending(line, executor.submit(() -> abandoned ? null : task.call())));
+    }
+
+    // a hash known up front keeps its place in the order but takes no thread
+    void add(final String line, final byte[] hash) throws IOException, WalkException {
+        makeRoom();
+        pending.add(new Pending(line, CompletableFuture.completedFuture(hash)));
+    }
+
+    void finish() throws IOException, WalkException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    // drops the pending hashes: tasks not started yet do nothing, running ones are waited for,
+    // so that nothing they read from is closed under them
+    void abandon() {
+        abandoned = true;
+        for (final Pending task : pending) {
+            try {
+                task.hash.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {
+                // only completion matters here
+            }
+        }
+        pending.clear();
+    }
+
+    private void makeRoom() throws IOException, WalkException {
+        if (pending.size() >= size) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException, WalkException {
+        final Pending next = pending.remove();
+        try {
+            writer.write(next.hash.get(), next.line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkException("Interrupted while waiting for hash of " + next.line, e);
+        } catch (ExecutionException e) {
+            throw new WalkException("Error while hashing " + next.line, e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Hashes files on a fixed pool, or on a virtual thread per file, while keeping at most `window` lines in flight
+// and at most `concurrency` files open, results are written strictly in submission order
+class ParallelWalker implements AutoCloseable {
+    private static final int WINDOW_PER_THREAD = 4;
+    private static final int WINDOW_PER_OPEN_FILE = 2;
+
+    private final ExecutorService executor;
+    private final Semaphore openFiles;
+    private final OrderedWindow window;
+    private final FileHasher hasher;
+
+    private ParallelWalker(final ExecutorService executor, final int concurrency, final int window,
+                           final HashSink writer, final FileHasher hasher, final Checkpoint checkpoint) {
+        this.executor = executor;
+        this.openFiles = new Semaphore(concurrency);
+        this.window = new OrderedWindow(executor, window, (hash, line) -> {
+            writer.write(hash, line);
+            checkpoint.lineWritten();
+        });
+        this.hasher = hasher;
+    }
+
+    static ParallelWalker platform(final int threads, final HashSink writer, final FileHasher hasher,
+                                   final Checkpoint checkpoint) {
+        return new ParallelWalker(Executors.newFixedThreadPool(threads), threads, threads * WINDOW_PER_THREAD,
+                writer, hasher, checkpoint);
+    }
+
+    // for high-latency file systems, where the number of requests in flight matters more than CPU count
+    static ParallelWalker virtual(final int maxOpenFiles, final HashSink writer, final FileHasher hasher,
+                                  final Checkpoint checkpoint) {
+        // a buffer is taken only under an open file permit, so the pool is never empty
+        return new ParallelWalker(virtualThreadExecutor(), maxOpenFiles, maxOpenFiles * WINDOW_PER_OPEN_FILE,
+                writer, hasher.withBufferPool(maxOpenFiles), checkpoint);
+    }
+
+    // virtual threads appeared in Java 21, older runtimes fall back to a cached pool bounded by the window
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not available, using platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void submit(final MetadataPrefetcher.Status status) throws IOException, WalkException {
+        // a known failure takes neither a thread nor an open file
+        if (status.failed()) {
+            window.add(status.line, hasher.hashStatus(status));
+        } else {
+            window.submit(status.line, () -> hash(status));
+        }
+    }
+
+    private byte[] hash(final MetadataPrefetcher.Status status) throws InterruptedException {
+        openFiles.acquire();
+        try {
+            return hasher.hashStatus(status);
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    void finish() throws IOException, WalkException {
+        window.finish();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,10 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+public class RecursiveWalk {
+    public static void main(String[] args) {
+        WalkOptions defaults = new WalkOptions();
+        defaults.recursive = true;
+        defaults.threads = Runtime.getRuntime().availableProcessors();
+        Walk.run(args, defaults);
+    }
+}
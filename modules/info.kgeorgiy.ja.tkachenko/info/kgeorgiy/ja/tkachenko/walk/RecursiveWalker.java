@@ -0,0 +1,117 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Expands directories with fork/join: every directory is listed by its own task,
+// subdirectories and batches of files are forked, so files are hashed while the tree is still being listed.
+// Entries of one input line are written in completion order, input lines themselves stay in order.
+class RecursiveWalker implements AutoCloseable {
+    private static final int FILE_BATCH = 64;
+
+    private final ForkJoinPool pool;
+    private final HashSink writer;
+    private final FileHasher hasher;
+
+    RecursiveWalker(final int threads, final HashSink writer, final FileHasher hasher) {
+        this.pool = new ForkJoinPool(threads);
+        this.writer = writer;
+        this.hasher = hasher;
+    }
+
+    void walk(final String line) throws IOException {
+        final Path path;
+        try {
+            path = Paths.get(line);
+        } catch (InvalidPathException e) {
+            writer.write(hasher.invalidPath(line, e.getMessage()), line);
+            return;
+        }
+        try {
+            if (Files.isDirectory(path)) {
+                pool.invoke(new DirectoryTask(path));
+            } else {
+                writer.write(hasher.hashFile(path, line), line);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void hashAll(final List<Path> files) {
+        for (final Path file : files) {
+            final String name = file.toString();
+            try {
+                writer.write(hasher.hashFile(file, name), name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        DirectoryTask(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            final List<ForkJoinTask<?>> forked = new ArrayList<>();
+            List<Path> files = new ArrayList<>(FILE_BATCH);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (final Path entry : stream) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        forked.add(new DirectoryTask(entry).fork());
+                    } else {
+                        files.add(entry);
+                        if (files.size() == FILE_BATCH) {
+                            forked.add(new FileBatchTask(files).fork());
+                            files = new ArrayList<>(FILE_BATCH);
+                        }
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                final String name = directory.toString();
+                try {
+                    writer.write(hasher.failed("listing directory", name, e), name);
+                } catch (IOException writeError) {
+                    throw new UncheckedIOException(writeError);
+                }
+            }
+            hashAll(files);
+            for (final ForkJoinTask<?> task : forked) {
+                task.join();
+            }
+        }
+    }
+
+    private class FileBatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+
+        FileBatchTask(final List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            hashAll(files);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,102 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Merges outputs of `Walk -shard <index>/<count>` runs into the output of a single run. The input list is read
+// again to find the shard of every line, and the next line of that shard's output is copied,
+// so only one line per file is held in memory. Shard outputs are given in index order.
+public class ShardMerge {
+    private static final String USAGE = "Invalid program parameters. The correct run format is "
+            + "\"java ShardMerge [-partition line|hash] <input file> <output file> <shard output>...\"";
+
+    public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (WalkException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void run(String[] args) throws WalkException {
+        if (args == null || args.length < 3) {
+            throw new WalkException(USAGE);
+        }
+        int first = 0;
+        boolean byHash = false;
+        if (args[0] != null && args[0].equals("-partition")) {
+            byHash = WalkOptions.parseChoice(args[0], args[1], "line", "hash");
+            first = 2;
+        }
+        if (args.length - first < 3) {
+            throw new WalkException(USAGE);
+        }
+        Path input = path(args[first]);
+        Path output = path(args[first + 1]);
+        Path[] shards = new Path[args.length - first - 2];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = path(args[first + 2 + i]);
+        }
+        merge(input, output, shards, byHash);
+    }
+
+    private static Path path(String name) throws WalkException {
+        try {
+            return Paths.get(name);
+        } catch (InvalidPathException | NullPointerException e) {
+            throw new WalkException("Path " + name + " is invalid", e);
+        }
+    }
+
+    private static void merge(Path input, Path output, Path[] shards, boolean byHash) throws WalkException {
+        BufferedReader[] readers = new BufferedReader[shards.length];
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < shards.length; i++) {
+                readers[i] = Files.newBufferedReader(shards[i], StandardCharsets.UTF_8);
+            }
+            long[] shardLines = new long[shards.length];
+            long number = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                int shard = ShardReader.shardOf(line, number++, byHash, shards.length);
+                String hashed = readers[shard].readLine();
+                if (hashed == null) {
+                    throw new WalkException("Shard output " + shards[shard] + " ends before line " + number
+                            + " of the input, was the shard run with the same input and partition?");
+                }
+                shardLines[shard]++;
+                // shard outputs passed in another order, or another partition, may still have matching line counts
+                if (!hashed.endsWith(" " + line)) {
+                    throw new WalkException("Line " + shardLines[shard] + " of shard output " + shards[shard]
+                            + " is not for line " + number + " of the input, are the shard outputs in shard order?");
+                }
+                out.write(hashed);
+                out.write('\n');
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (readers[i].readLine() != null) {
+                    throw new WalkException("Shard output " + shards[i] + " has more lines than its part of the input");
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkException("Error while merging shard outputs", e);
+        } finally {
+            for (BufferedReader reader : readers) {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                        // nothing was written through it
+                    }
+                }
+            }
+        }
+    }
+}
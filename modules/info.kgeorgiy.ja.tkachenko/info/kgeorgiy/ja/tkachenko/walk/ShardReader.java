@@ -0,0 +1,47 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// Input of one shard: passes through only the lines assigned to `shard` out of `shards`,
+// either round robin by line number or by CRC32C of the path, so any node computes the same partition
+class ShardReader implements LineReader {
+    private final LineReader in;
+    private final boolean byHash;
+    private final int shard;
+    private final int shards;
+    private long number;
+
+    ShardReader(final LineReader in, final boolean byHash, final int shard, final int shards) {
+        this.in = in;
+        this.byHash = byHash;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    static int shardOf(final String line, final long number, final boolean byHash, final int shards) {
+        if (!byHash) {
+            return (int) (number % shards);
+        }
+        final CRC32C crc = new CRC32C();
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (shardOf(line, number++, byHash, shards) == shard) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
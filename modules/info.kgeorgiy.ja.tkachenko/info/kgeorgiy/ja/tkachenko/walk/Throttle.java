@@ -0,0 +1,100 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+// Shapes reads of all hashing threads to at most `bytesPerSecond` and `iops`. Both limits are virtual clocks
+// (GCRA): a read reserves its cost on the clock and sleeps until the clock is at most BURST ahead of now,
+// so reads are spread evenly instead of coming in bursts once a second.
+// With a latency target the byte rate is adjusted every ADJUST_INTERVAL: halved while the average read latency
+// is above the target, then raised by a quarter per interval back to the configured limit, if any.
+class Throttle {
+    private static final long BURST = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long ADJUST_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final double MIN_RATE = 64 * 1024;
+    private static final double BACKOFF = 0.5;
+    private static final double RECOVERY = 1.25;
+
+    private final double maxBytesRate;
+    private final double opsRate;
+    private final long latencyTarget;
+    private final WalkMetrics metrics;
+    private double bytesRate;
+    private long bytesClock;
+    private long opsClock;
+    private long windowStart = System.nanoTime();
+    private long windowBytes;
+    private long windowOps;
+    private long windowLatency;
+
+    // zero means no limit, or no latency target
+    Throttle(final long bytesPerSecond, final int iops, final long latencyTargetMillis, final WalkMetrics metrics) {
+        this.maxBytesRate = bytesPerSecond > 0 ? bytesPerSecond : Double.POSITIVE_INFINITY;
+        this.opsRate = iops > 0 ? iops : Double.POSITIVE_INFINITY;
+        this.latencyTarget = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.metrics = metrics;
+        this.bytesRate = maxBytesRate;
+    }
+
+    // waits until a read of `bytes` bytes is allowed
+    void acquire(final long bytes) throws InterruptedIOException {
+        final long now = System.nanoTime();
+        final long wait;
+        synchronized (this) {
+            bytesClock = reserve(bytesClock, now, bytes / bytesRate);
+            opsClock = reserve(opsClock, now, 1 / opsRate);
+            wait = Math.max(bytesClock, opsClock) - BURST - now;
+        }
+        if (wait > 0) {
+            metrics.throttled(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    private static long reserve(final long clock, final long now, final double seconds) {
+        return Double.isFinite(seconds) ? Math.max(clock, now) + (long) (seconds * 1e9) : clock;
+    }
+
+    private static long settle(final long clock, final double seconds) {
+        return Double.isFinite(seconds) ? clock + (long) (seconds * 1e9) : clock;
+    }
+
+    // reports a finished read that reserved `reserved` bytes with acquire, or nothing if zero, and returned `bytes`,
+    // -1 at the end of the file: the difference is settled on the clocks, so a read that got nothing costs nothing
+    void completed(final long reserved, final long bytes, final long nanos) {
+        final long read = Math.max(bytes, 0);
+        final int ops = (read > 0 ? 1 : 0) - (reserved > 0 ? 1 : 0);
+        final long now = System.nanoTime();
+        synchronized (this) {
+            bytesClock = settle(bytesClock, (read - reserved) / bytesRate);
+            opsClock = settle(opsClock, ops / opsRate);
+            if (latencyTarget == 0 || read == 0) {
+                return;
+            }
+            windowBytes += read;
+            windowOps++;
+            windowLatency += nanos;
+            final long elapsed = now - windowStart;
+            if (elapsed < ADJUST_INTERVAL) {
+                return;
+            }
+            final double observed = windowBytes * 1e9 / elapsed;
+            if (windowLatency / windowOps > latencyTarget) {
+                bytesRate = Math.max(MIN_RATE, Math.min(bytesRate, observed) * BACKOFF);
+            } else if (bytesRate < maxBytesRate) {
+                // a rate far above what is actually read does not limit anything any more
+                final double raised = bytesRate * RECOVERY;
+                bytesRate = raised > observed * 2 ? maxBytesRate : Math.min(maxBytesRate, raised);
+            }
+            windowStart = now;
+            windowBytes = 0;
+            windowOps = 0;
+            windowLatency = 0;
+        }
+    }
+}
@@ -1,30 +1,35 @@
 package info.kgeorgiy.ja.tkachenko.walk;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class Walk {
     public static void main(String[] args) {
+        run(args, new WalkOptions());
+    }
 
+    static void run(String[] args, WalkOptions defaults) {
         try {
-            checkArgs(args);
-            Path in = inputPath(args[0]);
-            Path out = outputPath(args[1]);
-            walk(in, out);
+            execute(args, defaults);
         } catch (WalkException e) {
             System.err.println("Error: " + e.getMessage());
         }
     }
 
-    private static void checkArgs(String[] args) throws WalkException {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            throw new WalkException("Invalid program parameters. " +
-                    "The correct run format is \"java Walk <input file> <output file>\"");
-        }
+    // fails instead of printing the error, for callers that must not mistake a failed run for a finished one
+    static void execute(String[] args, WalkOptions defaults) throws WalkException {
+        WalkOptions options = WalkOptions.parse(args, defaults);
+        Path in = inputPath(options.input);
+        Path out = outputPath(options.output);
+        walk(in, out, options);
     }
 
     private static Path inputPath(String inputFileName) throws WalkException {
@@ -55,22 +60,76 @@ public class Walk {
         }
     }
 
-    private static void walk(Path inputPath, Path outputPath) throws WalkException {
-        try (BufferedReader bufferedReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
-            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    try {
-                        Path path = Paths.get(line);
-                        long hash = hashPJW(path);
-                        writeHash(bufferedWriter, hash, line);
-                    } catch (InvalidPathException e) {
-                        System.err.println("Invalid path " + line + ": " + e.getMessage());
-                        writeHash(bufferedWriter, 0, line);
-                    } catch (IOException e) {
-                        System.err.println("Error while scanning file " + line + ": " + e.getMessage());
-                        writeHash(bufferedWriter, 0, line);
-                    }
+    private static void walk(Path inputPath, Path outputPath, WalkOptions options) throws WalkException {
+        WalkMetrics metrics = new WalkMetrics();
+        metrics.register();
+        ScheduledExecutorService progress = options.progress > 0 ? metrics.reportProgress(options.progress) : null;
+        try (HashCache cache = openCache(options)) {
+            FileHasher hasher = new FileHasher(options.algorithm, options.mmapThreshold, options.asyncIO,
+                    cache, metrics, createThrottle(options, metrics));
+            walk(inputPath, outputPath, options, hasher);
+        } catch (IOException e) {
+            throw new WalkException("Error while saving hash cache", e);
+        } finally {
+            if (progress != null) {
+                progress.shutdownNow();
+                System.err.println("Walk: " + metrics.progress());
+            }
+        }
+    }
+
+    private static Throttle createThrottle(WalkOptions options, WalkMetrics metrics) {
+        if (options.maxBandwidth == 0 && options.maxIOPS == 0 && options.latencyTarget == 0) {
+            return null;
+        }
+        return new Throttle(options.maxBandwidth, options.maxIOPS, options.latencyTarget, metrics);
+    }
+
+    private static HashCache openCache(WalkOptions options) throws WalkException {
+        if (options.cache == null) {
+            return null;
+        }
+        try {
+            return HashCache.open(Paths.get(options.cache), options.algorithm);
+        } catch (InvalidPathException e) {
+            throw new WalkException("Path " + options.cache + " is invalid", e);
+        } catch (IOException e) {
+            throw new WalkException("Could not open hash cache", e);
+        }
+    }
+
+    private static Checkpoint openCheckpoint(Path inputPath, Path outputPath, WalkOptions options)
+            throws WalkException {
+        if (options.checkpoint == 0) {
+            return Checkpoint.disabled();
+        }
+        String run = String.join("\n", inputPath.toAbsolutePath().toString(),
+                outputPath.toAbsolutePath().toString(), options.algorithm.name(),
+                options.shard + "/" + options.shards + (options.shardByHash ? " hash" : " line"));
+        try {
+            return Checkpoint.open(outputPath, run, options.checkpoint);
+        } catch (IOException e) {
+            throw new WalkException("Could not open checkpoint journal", e);
+        }
+    }
+
+    private static LineReader openInput(Path inputPath, WalkOptions options) throws IOException {
+        LineReader reader = LineReader.of(Files.newBufferedReader(inputPath, StandardCharsets.UTF_8));
+        return options.shards > 0
+                ? new ShardReader(reader, options.shardByHash, options.shard, options.shards)
+                : reader;
+    }
+
+    private static void walk(Path inputPath, Path outputPath, WalkOptions options, FileHasher hasher)
+            throws WalkException {
+        try (Checkpoint checkpoint = openCheckpoint(inputPath, outputPath, options);
+             LineReader reader = openInput(inputPath, options)) {
+            checkpoint.skipCommitted(reader);
+            try (FileChannel outputChannel = checkpoint.openOutput(outputPath)) {
+                if (options.binary) {
+                    writeManifest(reader, outputChannel, hasher, options);
+                } else {
+                    writeText(reader, outputChannel, hasher, options, checkpoint);
                 }
             } catch (SecurityException e) {
                 throw new WalkException("Not enough rights to write to output file", e);
@@ -88,27 +147,145 @@ public class Walk {
         }
     }
 
-    private static void writeHash(BufferedWriter bw, long hash, String line) throws IOException {
-        bw.write(String.format("%016x", hash) + " " + line + '\n');
+    private static void writeText(LineReader reader, FileChannel output, FileHasher hasher, WalkOptions options,
+                                  Checkpoint checkpoint) throws IOException, WalkException {
+        try (HashWriter hashWriter = new HashWriter(Channels.newOutputStream(output))) {
+            checkpoint.attach(output, hashWriter);
+            if (options.mode == WalkOptions.Mode.DUPLICATES) {
+                findDuplicates(reader, hashWriter, hasher, options.threads);
+            } else if (options.mode == WalkOptions.Mode.WATCH) {
+                watch(reader, hashWriter, hasher, options.debounce);
+            } else {
+                walkFiles(reader, hashWriter, hasher, options, checkpoint);
+            }
+            hashWriter.flush();
+            checkpoint.complete();
+        }
+    }
+
+    private static void writeManifest(LineReader reader, FileChannel output, FileHasher hasher,
+                                      WalkOptions options) throws IOException, WalkException {
+        try (ManifestWriter manifestWriter = new ManifestWriter(Channels.newOutputStream(output), options.algorithm)) {
+            walkFiles(reader, manifestWriter, hasher, options, Checkpoint.disabled());
+        }
+    }
+
+    private static void walkFiles(LineReader reader, HashSink writer, FileHasher hasher, WalkOptions options,
+                                  Checkpoint checkpoint) throws IOException, WalkException {
+        if (options.mode == WalkOptions.Mode.ARCHIVE) {
+            walkArchives(reader, writer, hasher, options.threads);
+        } else if (options.mode == WalkOptions.Mode.MERKLE) {
+            walkMerkle(reader, writer, hasher, options);
+        } else if (options.mode == WalkOptions.Mode.CHUNKS) {
+            new ChunkWalker(hasher, options.chunkSize).walk(reader, writer);
+        } else if (options.recursive) {
+            walkRecursive(reader, writer, hasher, options.threads);
+        } else if (options.locality) {
+            walkLocality(reader, writer, hasher, options.threads, checkpoint);
+        } else if (options.virtualThreads > 0) {
+            walkParallel(reader, ParallelWalker.virtual(options.virtualThreads, writer, hasher, checkpoint),
+                    prefetcher(options, hasher));
+        } else if (options.threads > 1) {
+            walkParallel(reader, ParallelWalker.platform(options.threads, writer, hasher, checkpoint),
+                    prefetcher(options, hasher));
+        } else if (options.prefetch) {
+            MetadataPrefetcher prefetcher = prefetcher(options, hasher);
+            List<MetadataPrefetcher.Status> batch;
+            while (!(batch = prefetcher.next(reader)).isEmpty()) {
+                for (MetadataPrefetcher.Status status : batch) {
+                    writer.write(hasher.hashStatus(status), status.line);
+                    checkpoint.lineWritten();
+                }
+            }
+        } else {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(hasher.hashLine(line), line);
+                checkpoint.lineWritten();
+            }
+        }
     }
 
+    private static MetadataPrefetcher prefetcher(WalkOptions options, FileHasher hasher) {
+        return options.prefetch ? new MetadataPrefetcher(hasher.cached()) : null;
+    }
 
-    private static long hashPJW(final Path path) throws IOException { // like ELF hash but for 64 bit
-        try (InputStream inputStream = Files.newInputStream(path)) {
-            int buffSize = 2048;
-            byte[] buff = new byte[buffSize];
-            long hash = 0, high, length;
-            while ((length = inputStream.read(buff)) != -1) {
-                for (int i = 0; i < length; i++) {
-                    hash = (hash << 8) + (buff[i] & 0xff);
-                    high = hash & 0xFF00_0000_0000_0000L;
-                    if (high != 0) {
-                        hash ^= high >> 48;
-                        hash &= ~high;
+    private static void walkParallel(LineReader reader, ParallelWalker walker,
+                                     MetadataPrefetcher prefetcher) throws IOException, WalkException {
+        try (walker) {
+            if (prefetcher != null) {
+                List<MetadataPrefetcher.Status> batch;
+                while (!(batch = prefetcher.next(reader)).isEmpty()) {
+                    for (MetadataPrefetcher.Status status : batch) {
+                        walker.submit(status);
                     }
                 }
+            } else {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    walker.submit(MetadataPrefetcher.Status.unchecked(line));
+                }
+            }
+            walker.finish();
+        }
+    }
+
+    private static void walkRecursive(LineReader reader, HashSink writer, FileHasher hasher,
+                                      int threads) throws IOException, WalkException {
+        try (RecursiveWalker walker = new RecursiveWalker(threads, writer, hasher)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                walker.walk(line);
+            }
+        }
+    }
+
+    private static void walkLocality(LineReader reader, HashSink writer, FileHasher hasher, int threads,
+                                     Checkpoint checkpoint) throws IOException, WalkException {
+        try (LocalityWalker walker = new LocalityWalker(threads, hasher)) {
+            walker.walk(reader, writer, checkpoint);
+        }
+    }
+
+    private static void findDuplicates(LineReader reader, HashWriter writer, FileHasher hasher,
+                                       int threads) throws IOException, WalkException {
+        try (DuplicateFinder finder = new DuplicateFinder(threads, hasher)) {
+            finder.find(reader, writer);
+        }
+    }
+
+    private static void watch(LineReader reader, HashWriter writer, FileHasher hasher,
+                              int debounce) throws IOException, WalkException {
+        try (Watcher watcher = new Watcher(hasher, debounce)) {
+            watcher.watch(reader, writer);
+        }
+    }
+
+    private static void walkArchives(LineReader reader, HashSink writer, FileHasher hasher,
+                                     int threads) throws IOException, WalkException {
+        try (ArchiveWalker walker = new ArchiveWalker(threads, hasher)) {
+            walker.walk(reader, writer);
+        }
+    }
+
+    private static void walkMerkle(LineReader reader, HashSink writer, FileHasher hasher,
+                                   WalkOptions options) throws IOException, WalkException {
+        Path treePath = options.tree == null ? null : inputPath(options.tree);
+        MerkleTree previous = treePath == null
+                ? new MerkleTree(hasher.algorithm())
+                : MerkleTree.load(treePath, hasher.algorithm());
+        try (MerkleWalker walker = new MerkleWalker(options.threads, hasher, previous)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                walker.walk(line, writer);
+            }
+            if (treePath != null) {
+                try {
+                    walker.tree().save(treePath);
+                } catch (IOException e) {
+                    throw new WalkException("Error while saving Merkle tree", e);
+                }
             }
-            return hash;
         }
     }
 }
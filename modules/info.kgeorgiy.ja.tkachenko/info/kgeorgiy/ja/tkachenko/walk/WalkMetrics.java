@@ -0,0 +1,178 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+class WalkMetrics implements WalkMetricsMXBean {
+    private static final String NAME = "info.kgeorgiy.ja.tkachenko.walk:type=Walk";
+    private static final int BUCKETS = 40;
+
+    private final long start = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder invalidPaths = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> errorsByType = new ConcurrentHashMap<>();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+    void fileHashed(final long size, final long nanos) {
+        files.increment();
+        bytes.add(size);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        latencies.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    void invalidPath() {
+        invalidPaths.increment();
+    }
+
+    void ioError(final Throwable e) {
+        ioError(e.getClass().getSimpleName());
+    }
+
+    // for errors found without an exception, by the type the exception would have had
+    void ioError(final String type) {
+        ioErrors.increment();
+        errorsByType.computeIfAbsent(type, t -> new LongAdder()).increment();
+    }
+
+    void throttled(final long nanos) {
+        throttled.add(nanos);
+    }
+
+    // registers this instance on the platform MBean server, replacing metrics of a previous run in this JVM
+    void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getFilesHashed() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytesHashed() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return perSecond(getFilesHashed());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytesHashed());
+    }
+
+    private double perSecond(final long value) {
+        return value * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+
+    @Override
+    public long getInvalidPathErrors() {
+        return invalidPaths.sum();
+    }
+
+    @Override
+    public long getIOErrors() {
+        return ioErrors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByType() {
+        final Map<String, Long> result = new TreeMap<>();
+        errorsByType.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttled.sum());
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        final long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = latencies.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getLatencyMedianMicros() {
+        return latencyPercentile(0.5);
+    }
+
+    @Override
+    public long getLatency99Micros() {
+        return latencyPercentile(0.99);
+    }
+
+    // upper bound of the bucket containing the percentile
+    private long latencyPercentile(final double percentile) {
+        final long[] histogram = getLatencyHistogram();
+        long total = 0;
+        for (final long count : histogram) {
+            total += count;
+        }
+        final long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    // prints a progress line to stderr every `seconds` seconds until the returned executor is shut down
+    ScheduledExecutorService reportProgress(final int seconds) {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "walk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> System.err.println("Walk: " + progress()), seconds, seconds, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    String progress() {
+        return String.format("%d files (%.1f/s), %.1f MiB (%.1f MiB/s), cached %d, errors: %d invalid path, %d I/O %s, "
+                        + "latency median %d us, p99 %d us",
+                getFilesHashed(), getFilesPerSecond(), getBytesHashed() / 1048576.0, getBytesPerSecond() / 1048576.0,
+                getCacheHits(), getInvalidPathErrors(), getIOErrors(), getErrorsByType(),
+                getLatencyMedianMicros(), getLatency99Micros());
+    }
+}
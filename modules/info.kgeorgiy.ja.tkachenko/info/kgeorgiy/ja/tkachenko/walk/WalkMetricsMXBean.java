@@ -0,0 +1,33 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.util.Map;
+
+// Live counters of a Walk run, registered as info.kgeorgiy.ja.tkachenko.walk:type=Walk
+public interface WalkMetricsMXBean {
+    long getFilesHashed();
+
+    long getBytesHashed();
+
+    long getCacheHits();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getInvalidPathErrors();
+
+    long getIOErrors();
+
+    // I/O errors by exception class, e.g. NoSuchFileException
+    Map<String, Long> getErrorsByType();
+
+    // total time reads waited for the I/O throttle, summed over threads
+    long getThrottledMillis();
+
+    // element i counts files hashed in less than 2^i microseconds (and at least 2^(i-1))
+    long[] getLatencyHistogram();
+
+    long getLatencyMedianMicros();
+
+    long getLatency99Micros();
+}
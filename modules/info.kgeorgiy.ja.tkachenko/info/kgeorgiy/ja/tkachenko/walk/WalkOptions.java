@@ -0,0 +1,223 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+class WalkOptions {
+    enum Mode {
+        HASH, DUPLICATES, WATCH, ARCHIVE, MERKLE, CHUNKS;
+
+        static String names() {
+            return Arrays.stream(values()).map(mode -> mode.name().toLowerCase()).collect(Collectors.joining("|"));
+        }
+    }
+
+    static final String OPTIONS = "[-mode " + Mode.names() + "] [-threads <count>] "
+            + "[-virtual-threads <max open files>] [-mmap-threshold <bytes>] "
+            + "[-io sync|async] [-hash " + HashAlgorithm.names() + "] [-cache <file>] [-debounce <milliseconds>] "
+            + "[-progress <seconds>] [-checkpoint <lines>] [-format text|binary] [-tree <file>] "
+            + "[-order input|locality] [-chunk-size <average bytes>] [-max-bandwidth <bytes per second>] "
+            + "[-max-iops <count>] [-latency-target <milliseconds>] [-shard <index>/<count>] [-partition line|hash] "
+            + "[-metadata open|prefetch] <input file> <output file>";
+
+    private static final int MIN_CHUNK_SIZE = 1 << 8;
+    private static final int MAX_CHUNK_SIZE = 1 << 24;
+
+    String input;
+    String output;
+    Mode mode = Mode.HASH;
+    int threads = 1;
+    int virtualThreads;
+    boolean recursive;
+    long mmapThreshold = FileHasher.DEFAULT_MMAP_THRESHOLD;
+    boolean asyncIO;
+    HashAlgorithm algorithm = HashAlgorithm.PJW;
+    String cache;
+    int debounce = 200;
+    int progress;
+    int checkpoint;
+    boolean binary;
+    String tree;
+    boolean locality;
+    int chunkSize = Chunker.DEFAULT_AVERAGE;
+    long maxBandwidth;
+    int maxIOPS;
+    int latencyTarget;
+    int shard;
+    int shards;
+    boolean shardByHash;
+    boolean prefetch;
+
+    static WalkOptions parse(final String[] args, final WalkOptions options) throws WalkException {
+        if (args == null) {
+            throw usage(options);
+        }
+        int i = 0;
+        while (i < args.length && args[i] != null && args[i].startsWith("-")) {
+            final String option = args[i++];
+            if (i >= args.length || args[i] == null) {
+                throw new WalkException("Option " + option + " requires a value");
+            }
+            final String value = args[i++];
+            switch (option) {
+                case "-mode":
+                    options.mode = parseMode(value);
+                    break;
+                case "-threads":
+                    options.threads = parsePositive(option, value);
+                    break;
+                case "-virtual-threads":
+                    options.virtualThreads = parsePositive(option, value);
+                    break;
+                case "-mmap-threshold":
+                    options.mmapThreshold = parseSize(option, value);
+                    break;
+                case "-io":
+                    options.asyncIO = parseChoice(option, value, "sync", "async");
+                    break;
+                case "-hash":
+                    options.algorithm = HashAlgorithm.forName(value);
+                    break;
+                case "-cache":
+                    options.cache = value;
+                    break;
+                case "-debounce":
+                    options.debounce = parsePositive(option, value);
+                    break;
+                case "-progress":
+                    options.progress = parsePositive(option, value);
+                    break;
+                case "-checkpoint":
+                    options.checkpoint = parsePositive(option, value);
+                    break;
+                case "-format":
+                    options.binary = parseChoice(option, value, "text", "binary");
+                    break;
+                case "-tree":
+                    options.tree = value;
+                    break;
+                case "-order":
+                    options.locality = parseChoice(option, value, "input", "locality");
+                    break;
+                case "-chunk-size":
+                    options.chunkSize = parsePositive(option, value);
+                    if (Integer.bitCount(options.chunkSize) != 1 || options.chunkSize < MIN_CHUNK_SIZE
+                            || options.chunkSize > MAX_CHUNK_SIZE) {
+                        throw new WalkException("Value of " + option + " should be a power of two from "
+                                + MIN_CHUNK_SIZE + " to " + MAX_CHUNK_SIZE);
+                    }
+                    break;
+                case "-max-bandwidth":
+                    options.maxBandwidth = parseSize(option, value);
+                    break;
+                case "-max-iops":
+                    options.maxIOPS = parsePositive(option, value);
+                    break;
+                case "-latency-target":
+                    options.latencyTarget = parsePositive(option, value);
+                    break;
+                case "-shard":
+                    parseShard(option, value, options);
+                    break;
+                case "-partition":
+                    options.shardByHash = parseChoice(option, value, "line", "hash");
+                    break;
+                case "-metadata":
+                    options.prefetch = parseChoice(option, value, "open", "prefetch");
+                    break;
+                default:
+                    throw new WalkException("Unknown option " + option);
+            }
+        }
+        if (args.length - i != 2 || args[i] == null || args[i + 1] == null) {
+            throw usage(options);
+        }
+        if (options.checkpoint > 0 && (options.mode != Mode.HASH || options.recursive)) {
+            throw new WalkException("Checkpoints are supported only for hashing listed files in order");
+        }
+        if (options.binary
+                && (options.checkpoint > 0 || options.mode == Mode.DUPLICATES || options.mode == Mode.WATCH)) {
+            throw new WalkException("Binary format is not supported for duplicates, watch mode and checkpoints");
+        }
+        if (options.tree != null && options.mode != Mode.MERKLE) {
+            throw new WalkException("Option -tree requires -mode merkle");
+        }
+        if (options.locality && (options.mode != Mode.HASH || options.recursive || options.virtualThreads > 0)) {
+            throw new WalkException("Locality order is supported only for hashing listed files on platform threads");
+        }
+        if (options.shards > 0 && (options.mode != Mode.HASH || options.recursive || options.binary)) {
+            throw new WalkException("Sharding is supported only for hashing listed files in text format");
+        }
+        if (options.prefetch && (options.mode != Mode.HASH || options.recursive || options.locality)) {
+            throw new WalkException("Metadata prefetch is supported only for hashing listed files in input order");
+        }
+        options.input = args[i];
+        options.output = args[i + 1];
+        return options;
+    }
+
+    private static WalkException usage(final WalkOptions options) {
+        final String program = options.recursive ? "RecursiveWalk" : "Walk";
+        return new WalkException("Invalid program parameters. " +
+                "The correct run format is \"java " + program + " " + OPTIONS + "\"");
+    }
+
+    private static Mode parseMode(final String value) throws WalkException {
+        for (final Mode mode : Mode.values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new WalkException("Unknown mode " + value + ", supported are " + Mode.names());
+    }
+
+    static boolean parseChoice(final String option, final String value, final String no, final String yes)
+            throws WalkException {
+        if (value.equals(no) || value.equals(yes)) {
+            return value.equals(yes);
+        }
+        throw new WalkException("Value of " + option + " should be " + no + " or " + yes);
+    }
+
+    static int parsePositive(final String option, final String value) throws WalkException {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result <= 0) {
+                throw new WalkException("Value of " + option + " should be positive");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new WalkException("Value of " + option + " should be integer", e);
+        }
+    }
+
+    // "<index>/<count>", index counts from 0
+    private static void parseShard(final String option, final String value, final WalkOptions options)
+            throws WalkException {
+        final int slash = value.indexOf('/');
+        if (slash < 0) {
+            throw new WalkException("Value of " + option + " should be <index>/<count>");
+        }
+        options.shards = parsePositive(option, value.substring(slash + 1));
+        try {
+            options.shard = Integer.parseInt(value.substring(0, slash));
+        } catch (NumberFormatException e) {
+            throw new WalkException("Shard index should be integer", e);
+        }
+        if (options.shard < 0 || options.shard >= options.shards) {
+            throw new WalkException("Shard index should be from 0 to " + (options.shards - 1));
+        }
+    }
+
+    static long parseSize(final String option, final String value) throws WalkException {
+        try {
+            final long result = Long.parseLong(value);
+            if (result < 0) {
+                throw new WalkException("Value of " + option + " should be non-negative");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new WalkException("Value of " + option + " should be integer", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package info.kgeorgiy.ja.tkachenko.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Writes hashes of all listed files, then watches their directories and writes a new record
+// for every listed file that changes. Events for a file are debounced: it is rehashed only after
+// `debounce` milliseconds without further events. Runs until interrupted or until no directory is watched.
+class Watcher implements AutoCloseable {
+    private final FileHasher hasher;
+    private final long debounce;
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, List<String>> files = new HashMap<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+
+    Watcher(final FileHasher hasher, final long debounce) throws IOException {
+        this.hasher = hasher;
+        this.debounce = TimeUnit.MILLISECONDS.toNanos(debounce);
+        this.service = FileSystems.getDefault().newWatchService();
+    }
+
+    void watch(final LineReader reader, final HashWriter writer) throws IOException, WalkException {
+        final Map<Path, WatchKey> registered = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            writer.write(hasher.hashLine(line), line);
+            final Path file;
+            try {
+                file = Paths.get(line).toAbsolutePath().normalize();
+            } catch (InvalidPathException e) {
+                continue;
+            }
+            final Path directory = file.getParent();
+            if (directory != null && !registered.containsKey(directory)) {
+                try {
+                    final WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    registered.put(directory, key);
+                    directories.put(key, directory);
+                } catch (IOException e) {
+                    System.err.println("Could not watch directory " + directory + ": " + e.getMessage());
+                    continue;
+                }
+            }
+            files.computeIfAbsent(file, f -> new ArrayList<>()).add(line);
+        }
+        writer.flush();
+
+        try {
+            while (!directories.isEmpty()) {
+                final WatchKey key = poll();
+                if (key != null) {
+                    collect(key);
+                }
+                if (rehashDue(writer)) {
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkException("Watching interrupted", e);
+        } catch (ClosedWatchServiceException e) {
+            throw new WalkException("Watch service closed", e);
+        }
+    }
+
+    private WatchKey poll() throws InterruptedException {
+        if (pending.isEmpty()) {
+            return service.take();
+        }
+        final long now = System.nanoTime();
+        final long next = Collections.min(pending.values());
+        return next <= now ? service.poll() : service.poll(next - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void collect(final WatchKey key) {
+        final Path directory = directories.get(key);
+        final long deadline = System.nanoTime() + debounce;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (final Path file : files.keySet()) {
+                    if (directory.equals(file.getParent())) {
+                        pending.put(file, deadline);
+                    }
+                }
+            } else {
+                final Path file = directory.resolve((Path) event.context());
+                if (files.containsKey(file)) {
+                    pending.put(file, deadline);
+                }
+            }
+        }
+        if (!key.reset()) {
+            System.err.println("Directory " + directory + " is no longer watched");
+            directories.remove(key);
+        }
+    }
+
+    private boolean rehashDue(final HashWriter writer) throws IOException {
+        final long now = System.nanoTime();
+        boolean written = false;
+        for (final Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                it.remove();
+                final List<String> lines = files.get(entry.getKey());
+                final byte[] hash = hasher.hashFile(entry.getKey(), lines.get(0));
+                for (final String line : lines) {
+                    writer.write(hash, line);
+                }
+                written = true;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}